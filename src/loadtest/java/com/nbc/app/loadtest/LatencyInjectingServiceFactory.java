@@ -0,0 +1,63 @@
+package com.nbc.app.loadtest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.commons.impl.server.AbstractServiceFactory;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.chemistry.opencmis.commons.server.CmisService;
+import org.apache.chemistry.opencmis.inmemory.server.InMemoryServiceFactoryImpl;
+
+/**
+ * Local binding service factory in front of the OpenCMIS InMemory repository that delays every
+ * service call by loadtest.latencyMillis, to stand in for the network and repository time of a
+ * real Alfresco server.
+ *
+ * OpenCMIS creates one factory per session, the InMemory repository behind them is shared so the
+ * plain and the compressed session of a profile see the same content.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+public class LatencyInjectingServiceFactory extends AbstractServiceFactory {
+
+	public static final String LATENCY_MILLIS = "loadtest.latencyMillis";
+
+	private static InMemoryServiceFactoryImpl repository;
+
+	private long latencyMillis;
+
+	@Override
+	public void init(Map<String, String> parameters) {
+		String latency = parameters.get(LATENCY_MILLIS);
+		latencyMillis = latency == null || latency.isEmpty() ? 0 : Long.parseLong(latency);
+		synchronized (LatencyInjectingServiceFactory.class) {
+			if (repository == null) {
+				repository = new InMemoryServiceFactoryImpl();
+				repository.init(parameters);
+			}
+		}
+	}
+
+	@Override
+	public CmisService getService(CallContext context) {
+		CmisService service = repository.getService(context);
+		if (latencyMillis <= 0) {
+			return service;
+		}
+		InvocationHandler handler = (proxy, method, args) -> {
+			if (!"close".equals(method.getName())) {
+				TimeUnit.MILLISECONDS.sleep(latencyMillis);
+			}
+			try {
+				return method.invoke(service, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		};
+		return (CmisService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { CmisService.class }, handler);
+	}
+}
@@ -0,0 +1,291 @@
+package com.nbc.app.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import com.nbc.app.AlfrescoServicesApplication;
+import com.nbc.app.config.AlfrescoClient;
+import com.nbc.app.config.AlfrescoWarmup;
+import com.nbc.app.config.ConnectionRouter;
+
+/**
+ * Drives /processData of an embedded instance of the service, backed by the OpenCMIS InMemory
+ * repository, and reports latency percentiles, throughput and the allocation rate of the service.
+ *
+ * Run with: mvn -Ploadtest compile exec:java -Dexec.args="--loadtest.requests=2000 --loadtest.concurrency=16"
+ *
+ * Options (all optional):
+ *   loadtest.requests        measured requests, at least 1 (default 500)
+ *   loadtest.warmupRequests  requests sent before measuring (default 50)
+ *   loadtest.concurrency     concurrent clients, at least 1 (default 8)
+ *   loadtest.tickets         ticket folders the requests fan out over (default 10)
+ *   loadtest.sizes           file size distribution as size:weight pairs (default 4KB:60,256KB:30,4MB:10)
+ *   loadtest.mimeType        content type of the uploaded files (default application/octet-stream)
+ *   loadtest.latencyMillis   latency added to every repository call (default 5)
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+public class LoadTestRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+
+	private static final String FOLDER = "loadtest";
+	private static final String CLIENT_THREAD_PREFIX = "loadtest-client-";
+
+	public static void main(String[] args) throws Exception {
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(AlfrescoServicesApplication.class)
+				.profiles("loadtest").properties("server.port=0").run(args);
+		int exitCode;
+		try {
+			exitCode = new LoadTestRunner().run(context);
+		} finally {
+			context.close();
+		}
+		System.exit(exitCode);
+	}
+
+	private int run(ConfigurableApplicationContext context) throws Exception {
+		Environment env = context.getEnvironment();
+		int requests = env.getProperty("loadtest.requests", Integer.class, 500);
+		int warmupRequests = env.getProperty("loadtest.warmupRequests", Integer.class, 50);
+		int concurrency = env.getProperty("loadtest.concurrency", Integer.class, 8);
+		int tickets = env.getProperty("loadtest.tickets", Integer.class, 10);
+		String mimeType = env.getProperty("loadtest.mimeType", "application/octet-stream");
+		SizeDistribution sizes = new SizeDistribution(env.getProperty("loadtest.sizes", "4KB:60,256KB:30,4MB:10"));
+		String url = "http://localhost:" + env.getProperty("local.server.port") + "/processData";
+		if (requests <= 0 || concurrency <= 0 || tickets <= 0 || warmupRequests < 0) {
+			logger.error("loadtest.requests, loadtest.concurrency and loadtest.tickets must be positive,"
+					+ " loadtest.warmupRequests must not be negative");
+			return 2;
+		}
+
+		AlfrescoWarmup warmup = context.getBean(AlfrescoWarmup.class);
+		long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+		while (!warmup.isReady()) {
+			if (System.currentTimeMillis() > deadline) {
+				logger.error("The service did not warm up within a minute, see /health");
+				return 2;
+			}
+			Thread.sleep(100);
+		}
+		createFolders(context, tickets);
+
+		logger.info("Load test: {} requests, {} clients, {} tickets, sizes {}, latency {} ms", requests, concurrency, tickets,
+				sizes, env.getProperty(LatencyInjectingServiceFactory.LATENCY_MILLIS, "5"));
+		execute(url, warmupRequests, concurrency, tickets, sizes, mimeType, "warmup-");
+
+		Map<Long, Long> allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		Result result = execute(url, requests, concurrency, tickets, sizes, mimeType, "run-");
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedSince(allocatedBefore);
+
+		report(result, elapsed, allocated);
+		return result.errors.get() > 0 ? 1 : 0;
+	}
+
+	private void createFolders(ConfigurableApplicationContext context, int tickets) {
+		AlfrescoClient client = context.getBean(AlfrescoClient.class);
+		Session session = client.getSession(context.getBean(ConnectionRouter.class).getDefaultProfile());
+		client.createFolder(session, FOLDER, "/");
+		// Ticket folders exist up front, like they do once a pipeline has run before
+		for (int ticket = 0; ticket < tickets; ticket++) {
+			client.createFolder(session, ticketNumber(ticket), "/" + FOLDER);
+		}
+	}
+
+	private Result execute(String url, int requests, int concurrency, int tickets, SizeDistribution sizes,
+			String mimeType, String namePrefix) throws InterruptedException {
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setBufferRequestBody(false);
+		RestTemplate restTemplate = new RestTemplate(requestFactory);
+		Result result = new Result(requests);
+		AtomicInteger next = new AtomicInteger();
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService clients = Executors.newFixedThreadPool(concurrency,
+				r -> new Thread(r, CLIENT_THREAD_PREFIX + threadCount.incrementAndGet()));
+		for (int c = 0; c < concurrency; c++) {
+			final Random random = new Random(c);
+			clients.execute(() -> {
+				int i;
+				while ((i = next.getAndIncrement()) < requests) {
+					byte[] content = sizes.pick(random);
+					HttpEntity<MultiValueMap<String, Object>> request = request(namePrefix + i + ".bin", content, mimeType,
+							ticketNumber(i % tickets));
+					long begin = System.nanoTime();
+					try {
+						restTemplate.postForEntity(url, request, String.class);
+						result.bytes.addAndGet(content.length);
+					} catch (RuntimeException e) {
+						result.errors.incrementAndGet();
+						logger.warn("event=loadtest.request.failed request={} error={}", i, e.getMessage());
+					}
+					result.latencies[i] = System.nanoTime() - begin;
+				}
+			});
+		}
+		clients.shutdown();
+		clients.awaitTermination(1, TimeUnit.DAYS);
+		return result;
+	}
+
+	private HttpEntity<MultiValueMap<String, Object>> request(String fileName, byte[] content, String mimeType, String ticket) {
+		HttpHeaders fileHeaders = new HttpHeaders();
+		fileHeaders.setContentType(MediaType.parseMediaType(mimeType));
+		ByteArrayResource file = new ByteArrayResource(content) {
+			@Override
+			public String getFilename() {
+				return fileName;
+			}
+		};
+		MultiValueMap<String, Object> parts = new LinkedMultiValueMap<String, Object>();
+		parts.add("ticketNumber", ticket);
+		parts.add("folderPath", "/" + FOLDER);
+		parts.add("files", new HttpEntity<ByteArrayResource>(file, fileHeaders));
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+		return new HttpEntity<MultiValueMap<String, Object>>(parts, headers);
+	}
+
+	private String ticketNumber(int ticket) {
+		return "LT-" + ticket;
+	}
+
+	private void report(Result result, long elapsedNanos, long allocatedBytes) {
+		long[] latencies = result.latencies.clone();
+		Arrays.sort(latencies);
+		int requests = latencies.length;
+		double seconds = elapsedNanos / 1e9;
+		logger.info(String.format("Requests: %d, errors: %d, duration: %.2f s", requests, result.errors.get(), seconds));
+		logger.info(String.format("Throughput: %.1f req/s, %.2f MB/s", requests / seconds,
+				result.bytes.get() / seconds / (1024 * 1024)));
+		logger.info(String.format("Latency ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f", percentile(latencies, 50),
+				percentile(latencies, 90), percentile(latencies, 99), latencies[requests - 1] / 1e6));
+		logger.info(String.format("Service allocation: %.1f MB/s, %.1f KB/request", allocatedBytes / seconds / (1024 * 1024),
+				allocatedBytes / 1024.0 / requests));
+	}
+
+	private double percentile(long[] sorted, int percentile) {
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+
+	/*
+	 * Bytes allocated so far by every live thread that is not a load test client.
+	 */
+	private Map<Long, Long> allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Set<Long> clientThreads = new HashSet<Long>();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith(CLIENT_THREAD_PREFIX)) {
+				clientThreads.add(thread.getId());
+			}
+		}
+		long[] ids = threads.getAllThreadIds();
+		long[] allocated = threads.getThreadAllocatedBytes(ids);
+		Map<Long, Long> result = new HashMap<Long, Long>();
+		for (int i = 0; i < ids.length; i++) {
+			if (allocated[i] >= 0 && !clientThreads.contains(ids[i])) {
+				result.put(ids[i], allocated[i]);
+			}
+		}
+		return result;
+	}
+
+	private long allocatedSince(Map<Long, Long> before) {
+		long total = 0;
+		for (Map.Entry<Long, Long> entry : allocatedBytes().entrySet()) {
+			Long previous = before.get(entry.getKey());
+			total += entry.getValue() - (previous == null ? 0 : previous);
+		}
+		return total;
+	}
+
+	private static class Result {
+		final long[] latencies;
+		final AtomicInteger errors = new AtomicInteger();
+		final AtomicLong bytes = new AtomicLong();
+
+		Result(int requests) {
+			latencies = new long[requests];
+		}
+	}
+
+	/*
+	 * Weighted file sizes, i.e. "4KB:60,256KB:30,4MB:10". One random payload per size is shared by all requests.
+	 */
+	private static class SizeDistribution {
+		final List<byte[]> payloads = new ArrayList<byte[]>();
+		final List<Integer> cumulativeWeights = new ArrayList<Integer>();
+		final String description;
+		int totalWeight;
+
+		SizeDistribution(String description) {
+			this.description = description;
+			Random random = new Random(42);
+			for (String entry : description.split(",")) {
+				String[] sizeAndWeight = entry.trim().split(":");
+				byte[] payload = new byte[parseSize(sizeAndWeight[0])];
+				random.nextBytes(payload);
+				payloads.add(payload);
+				totalWeight += sizeAndWeight.length > 1 ? Integer.parseInt(sizeAndWeight[1]) : 1;
+				cumulativeWeights.add(totalWeight);
+			}
+		}
+
+		byte[] pick(Random random) {
+			int value = random.nextInt(totalWeight);
+			for (int i = 0; i < cumulativeWeights.size(); i++) {
+				if (value < cumulativeWeights.get(i)) {
+					return payloads.get(i);
+				}
+			}
+			return payloads.get(payloads.size() - 1);
+		}
+
+		private static int parseSize(String size) {
+			String value = size.trim().toUpperCase();
+			if (value.endsWith("MB")) {
+				return Integer.parseInt(value.substring(0, value.length() - 2)) * 1024 * 1024;
+			}
+			if (value.endsWith("KB")) {
+				return Integer.parseInt(value.substring(0, value.length() - 2)) * 1024;
+			}
+			return Integer.parseInt(value.endsWith("B") ? value.substring(0, value.length() - 1) : value);
+		}
+
+		@Override
+		public String toString() {
+			return description;
+		}
+	}
+}
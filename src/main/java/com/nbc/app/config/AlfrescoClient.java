@@ -5,15 +5,30 @@ import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
 import org.apache.chemistry.opencmis.commons.SessionParameter;
 import org.apache.chemistry.opencmis.commons.data.*;
+import org.apache.chemistry.opencmis.commons.definitions.PropertyDefinition;
 import org.apache.chemistry.opencmis.commons.enums.*;
 import org.apache.chemistry.opencmis.commons.exceptions.*;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import org.apache.chemistry.opencmis.commons.spi.Holder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.nbc.app.config.PermissionCache.Permissions;
+import com.nbc.app.domain.BulkUpdateResult;
+import com.nbc.app.domain.UploadItem;
+import com.nbc.app.domain.UploadResult;
+
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -29,14 +44,46 @@ import java.util.concurrent.ConcurrentHashMap;
 public class AlfrescoClient {
 	private static final Folder Document = null;
 
-	private static Log logger = LogFactory.getLog(AlfrescoClient.class);
+	private static final Logger logger = LoggerFactory.getLogger(AlfrescoClient.class);
+
+	// Thread safe, shared by all log statements that print dates
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss z")
+			.withZone(ZoneId.systemDefault());
+
+	// CMIS query TIMESTAMP literal, always in UTC
+	private static final DateTimeFormatter QUERY_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+			.withZone(ZoneOffset.UTC);
 	
 	@Value("${alfresco.url}")
 	String ALFRESCO_URL;
 
-	// Map with all open connections, will only be one for now
+	@Value("${alfresco.documentType:cmis:document}")
+	String DOCUMENT_TYPE;
+
+	// Property of the document type that holds the SHA-256 of the content, empty if the model has none
+	@Value("${alfresco.manifest.hashProperty:}")
+	String HASH_PROPERTY;
+
+	@Autowired
+	PermissionCache permissionCache;
+
+	private static final String COMPRESSED_SUFFIX = "#gzip";
+
+	// Session parameter holding the name of the connection profile the session was opened for
+	public static final String PROFILE_PARAMETER = "com.nbc.app.connectionProfile";
+
+	// Map with all open connections, one or two (plain and compressed) per connection profile
 	private static Map<String, Session> connections = new ConcurrentHashMap<String, Session>();
 
+	// One lock per connection name, so a slow repository only holds up requests for its own sessions
+	private static Map<String, Object> connectionLocks = new ConcurrentHashMap<String, Object>();
+
+	// Capabilities snapshot per open session, taken once when first needed
+	private static Map<Session, RepositoryCapabilitiesSnapshot> capabilities = new ConcurrentHashMap<Session, RepositoryCapabilitiesSnapshot>();
+
+	// Type hierarchy per open session, loaded at warm-up or when first needed
+	private static Map<Session, List<Tree<ObjectType>>> typeDescendants = new ConcurrentHashMap<Session, List<Tree<ObjectType>>>();
+
 	// Constructor
 	public AlfrescoClient() {
 
@@ -53,46 +100,105 @@ public class AlfrescoClient {
    * @return an Open CMIS Session object
    */
 	public Session getSession(String connectionName, String username, String pwd) {
+		return getSession(new ConnectionProfile(connectionName, ALFRESCO_URL, username, pwd));
+	}
+
+  /**
+   * Get an Open CMIS session for a connection profile. Sessions are kept per profile name,
+   * so every profile has its own session and its own OpenCMIS caches.
+   *
+   * @param profile the connection profile to open or re-use a session for
+   * @return an Open CMIS Session object
+   */
+	public Session getSession(ConnectionProfile profile) {
+		return getSession(profile, false);
+	}
+
+  /**
+   * Get an Open CMIS session for a connection profile that does or does not gzip request bodies.
+   * Both kinds of session are kept side by side, so the caller can choose per upload whether
+   * compressing the content is worth the CPU, see {@link CompressionAdvisor}.
+   *
+   * @param profile           the connection profile to open or re-use a session for
+   * @param clientCompression true to compress request bodies sent to the repository
+   * @return an Open CMIS Session object
+   */
+	public Session getSession(ConnectionProfile profile, boolean clientCompression) {
+		String connectionName = clientCompression ? profile.getName() + COMPRESSED_SUFFIX : profile.getName();
 		Session session = connections.get(connectionName);
 		if (session == null) {
-			logger.info("Not connected, creating new connection to Alfresco with the connection id ("
-                  + connectionName + ")");
+			synchronized (connectionLocks.computeIfAbsent(connectionName, k -> new Object())) {
+				session = connections.get(connectionName);
+				if (session == null) {
+					session = createSession(profile, clientCompression);
+					// Save connection for reuse
+					connections.put(connectionName, session);
+				}
+			}
+		} else {
+			logger.debug("Already connected to Alfresco with the connection id ({})", connectionName);
+		}
+
+		return session;
+	}
 
-			// No connection to Alfresco available, create a new one
-			SessionFactory sessionFactory = SessionFactoryImpl.newInstance();
-			Map<String, String> parameters = new HashMap<String, String>();
-			parameters.put(SessionParameter.USER, username);
-			parameters.put(SessionParameter.PASSWORD, pwd);
-			parameters.put(SessionParameter.ATOMPUB_URL, ALFRESCO_URL);
+	private Session createSession(ConnectionProfile profile, boolean clientCompression) {
+		logger.info("Not connected, creating new connection to Alfresco with the connection id ({})", profile.getName());
 
-			
+		// No connection to Alfresco available, create a new one
+		SessionFactory sessionFactory = SessionFactoryImpl.newInstance();
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(SessionParameter.USER, profile.getUserName());
+		parameters.put(SessionParameter.PASSWORD, profile.getPassword());
+		if (BindingType.LOCAL.value().equals(profile.getBindingType())) {
+			parameters.put(SessionParameter.BINDING_TYPE, BindingType.LOCAL.value());
+		} else {
+			parameters.put(SessionParameter.ATOMPUB_URL, profile.getUrl());
 			parameters.put(SessionParameter.BINDING_TYPE, BindingType.ATOMPUB.value());
-			parameters.put(SessionParameter.COMPRESSION, "true");
-			parameters.put(SessionParameter.CACHE_TTL_OBJECTS, "0");
-
-			List<Repository> repositories = sessionFactory.getRepositories(parameters);
-			Repository alfrescoRepository = null;
-			if (repositories != null && repositories.size() > 0) {
-				logger.info("Found (" + repositories.size() + ") Alfresco repositories");
-				alfrescoRepository = repositories.get(0);
-				logger.info("Info about the first Alfresco repo [ID=" + alfrescoRepository.getId() +
-						"][name=" + alfrescoRepository.getName() +
-						"][CMIS ver supported=" + alfrescoRepository.getCmisVersionSupported() + "]");
-			} else {
-				throw new CmisConnectionException(
-						"Could not connect to the Alfresco Server, no repository found!");
-			}
-
-			// Create a new session with the Alfresco repository
-			session = alfrescoRepository.createSession();
+		}
+		parameters.putAll(profile.getParameters());
+		parameters.put(PROFILE_PARAMETER, profile.getName());
+		parameters.put(SessionParameter.COMPRESSION, "true");
+		parameters.put(SessionParameter.CLIENT_COMPRESSION, String.valueOf(clientCompression));
+		parameters.put(SessionParameter.CACHE_TTL_OBJECTS, "0");
 
-			// Save connection for reuse
-			connections.put(connectionName, session);
+		List<Repository> repositories = sessionFactory.getRepositories(parameters);
+		Repository alfrescoRepository = null;
+		if (repositories != null && repositories.size() > 0) {
+			logger.info("Found ({}) Alfresco repositories", repositories.size());
+			alfrescoRepository = selectRepository(repositories, profile.getRepositoryId());
+			logger.info("Info about the selected Alfresco repo [ID={}][name={}][CMIS ver supported={}]",
+					alfrescoRepository.getId(), alfrescoRepository.getName(), alfrescoRepository.getCmisVersionSupported());
 		} else {
-			logger.info("Already connected to Alfresco with the connection id (" + connectionName + ")");
+			throw new CmisConnectionException(
+					"Could not connect to the Alfresco Server, no repository found!");
 		}
 
-		return session;
+		// Create a new session with the Alfresco repository
+		return alfrescoRepository.createSession();
+	}
+
+  /**
+   * Get the capabilities of the repository behind the session. The snapshot is taken once per session.
+   *
+   * @param session the session to get the repository capabilities for
+   * @return the immutable capabilities snapshot
+   */
+	public RepositoryCapabilitiesSnapshot getCapabilities(Session session) {
+		return capabilities.computeIfAbsent(session, s -> new RepositoryCapabilitiesSnapshot(s.getRepositoryInfo()));
+	}
+
+	private Repository selectRepository(List<Repository> repositories, String repositoryId) {
+		if (repositoryId == null || repositoryId.isEmpty()) {
+			return repositories.get(0);
+		}
+		for (Repository repository : repositories) {
+			if (repositoryId.equals(repository.getId())) {
+				return repository;
+			}
+		}
+		throw new CmisConnectionException("Could not connect to the Alfresco Server, repository "
+				+ repositoryId + " not found!");
 	}
   
 	/**
@@ -102,33 +208,20 @@ public class AlfrescoClient {
 	 */
 	public void listRepoCapabilities(RepositoryInfo repositoryInfo) {
 		RepositoryCapabilities repoCapabilities = repositoryInfo.getCapabilities();
-		logger.info("aclCapability = " + repoCapabilities.getAclCapability().name());
-		logger.info("changesCapability = " + 
-				repoCapabilities.getChangesCapability().name());
-		logger.info("contentStreamUpdatable = " + 
-				repoCapabilities.getContentStreamUpdatesCapability().name());
-		logger.info("joinCapability = " + 
-				repoCapabilities.getJoinCapability().name());
-		logger.info("queryCapability = " + 
-				repoCapabilities.getQueryCapability().name());
-		logger.info("renditionCapability = " +  
-				repoCapabilities.getRenditionsCapability().name());
-		logger.info("allVersionsSearchable? = " + 
-				repoCapabilities.isAllVersionsSearchableSupported());
-		logger.info("getDescendantSupported? = " + 
-				repoCapabilities.isGetDescendantsSupported());
-		logger.info("getFolderTreeSupported? = " + 
-				repoCapabilities.isGetFolderTreeSupported());
-		logger.info("multiFilingSupported? = " + 
-				repoCapabilities.isMultifilingSupported());
-		logger.info("privateWorkingCopySearchable? = " + 
-				repoCapabilities.isPwcSearchableSupported());
-		logger.info("pwcUpdateable? = " + 
-				repoCapabilities.isPwcUpdatableSupported());
-		logger.info("unfilingSupported? = " + 
-				repoCapabilities.isUnfilingSupported());
-		logger.info("versionSpecificFilingSupported? = " + 
-				repoCapabilities.isVersionSpecificFilingSupported());
+		logger.info("aclCapability = {}", repoCapabilities.getAclCapability().name());
+		logger.info("changesCapability = {}", repoCapabilities.getChangesCapability().name());
+		logger.info("contentStreamUpdatable = {}", repoCapabilities.getContentStreamUpdatesCapability().name());
+		logger.info("joinCapability = {}", repoCapabilities.getJoinCapability().name());
+		logger.info("queryCapability = {}", repoCapabilities.getQueryCapability().name());
+		logger.info("renditionCapability = {}", repoCapabilities.getRenditionsCapability().name());
+		logger.info("allVersionsSearchable? = {}", repoCapabilities.isAllVersionsSearchableSupported());
+		logger.info("getDescendantSupported? = {}", repoCapabilities.isGetDescendantsSupported());
+		logger.info("getFolderTreeSupported? = {}", repoCapabilities.isGetFolderTreeSupported());
+		logger.info("multiFilingSupported? = {}", repoCapabilities.isMultifilingSupported());
+		logger.info("privateWorkingCopySearchable? = {}", repoCapabilities.isPwcSearchableSupported());
+		logger.info("pwcUpdateable? = {}", repoCapabilities.isPwcUpdatableSupported());
+		logger.info("unfilingSupported? = {}", repoCapabilities.isUnfilingSupported());
+		logger.info("versionSpecificFilingSupported? = {}", repoCapabilities.isVersionSpecificFilingSupported());
 	}
 
 	/**
@@ -143,11 +236,10 @@ public class AlfrescoClient {
 			if(contentItem instanceof Document) {
 				Document docMetadata = (Document) contentItem;
 				ContentStream docContent = docMetadata.getContentStream();
-				logger.info(docMetadata.getName() + " [size=" + docContent.getLength() + "][Mimetype=" +
-						docContent.getMimeType() +"][type=" + ((CmisObjectProperties) docContent).getType().getDisplayName() + "]"
-						);
+				logger.info("{} [size={}][Mimetype={}][type={}]", docMetadata.getName(), docContent.getLength(),
+						docContent.getMimeType(), ((CmisObjectProperties) docContent).getType().getDisplayName());
 			}else {
-				logger.info(contentItem.getName() + "[type=" + contentItem.getType().getDisplayName()+"]");
+				logger.info("{}[type={}]", contentItem.getName(), contentItem.getType().getDisplayName());
 			}
 		}
 	}
@@ -168,12 +260,11 @@ public class AlfrescoClient {
 		int count = 0;
 		ArrayList<CmisObject> cmisObjects = new ArrayList<CmisObject>();
 		while(!finishedPaging) {
-			logger.info("Page " + pageNumber + " (" + numberOfPages + ")");
+			logger.info("Page {} ({})", pageNumber, numberOfPages);
 			ItemIterable<CmisObject> currentPage = contentItems.skipTo(count).getPage();
 
 			for(CmisObject contentItem : currentPage) {
-				logger.info(contentItem.getName() + " [type=" + 
-						contentItem.getType().getDisplayName() + "]");
+				logger.info("{} [type={}]", contentItem.getName(), contentItem.getType().getDisplayName());
 				count++;
 				//cmisObjects.add(contentItem);
 
@@ -193,13 +284,10 @@ public class AlfrescoClient {
 		for(Property<?> p : cmisObject.getProperties()) {
 			if(PropertyType.DATETIME == p.getType()) {
 				Calendar calValue = (Calendar) p.getValue();
-				logger.info("  - " +p.getId()+ " = "+ (calValue != null ?
-						new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z"). 
-						format(calValue.getTime()) : ""));
+				logger.info("  - {} = {}", p.getId(), calValue != null ? date2String(calValue.getTime()) : "");
 			}else {
-				System.out.println("-------------------------------------------------------");
-				logger.info("  - " + p.getId() + " = " + p.getValue());
-				logger.info("  - " + p.getDisplayName() + " = " + p.getLocalName());
+				logger.info("  - {} = {}", p.getId(), p.getValue());
+				logger.info("  - {} = {}", p.getDisplayName(), p.getLocalName());
 			}
 		}
 	}
@@ -209,13 +297,24 @@ public class AlfrescoClient {
 	 * @param session Session object created to access the alfresco repository.
 	 */
 	public void listTypesAndSubtypes(Session session) {
-		boolean includePropertyDefinitions = false;
-		List<Tree<ObjectType>> typeTrees = session.getTypeDescendants(null, -1, includePropertyDefinitions);
+		List<Tree<ObjectType>> typeTrees = getTypeDescendants(session);
 		for(Tree<ObjectType> typeTree: typeTrees) {
 			logTypes(typeTree, "");
 		}
 	}
 
+	/**
+	 * Get the full type hierarchy of the repository. The hierarchy is loaded once per session.
+	 * @param session Session object created to access the alfresco repository.
+	 * @return The type trees below the base types.
+	 */
+	public List<Tree<ObjectType>> getTypeDescendants(Session session) {
+		return typeDescendants.computeIfAbsent(session, s -> {
+			boolean includePropertyDefinitions = false;
+			return Collections.unmodifiableList(s.getTypeDescendants(null, -1, includePropertyDefinitions));
+		});
+	}
+
 	private void logTypes(Tree<ObjectType> typeTree, String tab) {
 		ObjectType objType = typeTree.getItem();
 		String docInfo = "";
@@ -223,9 +322,8 @@ public class AlfrescoClient {
 			DocumentType docType = (DocumentType) objType;
 			docInfo = "[versionable=" + docType.isVersionable() +
 					"][content=" + docType.getContentStreamAllowed() + "]";
-			logger.info(tab + objType.getDisplayName() +
-					objType.getId() + "][fileable=" + objType.isFileable() + 
-					"][queryable=" + objType.isQueryable() + "]" + docInfo);
+			logger.info("{}{}{}][fileable={}][queryable={}]{}", tab, objType.getDisplayName(), objType.getId(),
+					objType.isFileable(), objType.isQueryable(), docInfo);
 			for (Tree<ObjectType> subTypeTree : typeTree.getChildren()) {
 				logTypes(subTypeTree, tab + " ");
 			}
@@ -235,12 +333,13 @@ public class AlfrescoClient {
 	
 	public boolean checkFolderExists(Session session,String folderName,String path) {
 				
-		// Check if the folder already exists
-		Folder newFolder = (Folder) getObject(session, path, folderName);
-		if(newFolder == null) {					
+		// Check if the folder already exists, from the permission cache so a batch into one folder fetches it once.
+		// A folder deleted meanwhile is caught by the upload, which drops the stale entry
+		String folderPath = objectPath(path, folderName);
+		if(folderPermissions(session, folderPath) == null) {					
 			return true;
 		} else {
-			logger.info("Folder already exist: " + newFolder.getPath());
+			logger.debug("event=folder.exists path={}", folderPath);
 			
 			return false;
 		}	
@@ -259,32 +358,31 @@ public class AlfrescoClient {
 	 */
 	public boolean createFolder(Session session, String folderName, String path) {
 		
-		Folder parentFolder = getFolder(session, path);
-		
-		// If the path does not exist return or is duplicate folder.
-		//if(parentFolder == null) 
-		//	return;
-		
 		// Make sure the user is allowed to create a folder
-		// under the root folder
-		if(parentFolder.getAllowableActions().getAllowableActions().contains(Action.CAN_CREATE_FOLDER)==false){
-			throw new CmisUnauthorizedException("Current user does not have permission to create " +
-					"a sub-folder in " + parentFolder.getPath());
-		}
+		// under the parent folder
+		String parentId = checkFolderPermission(session, path, Action.CAN_CREATE_FOLDER,
+				"Current user does not have permission to create a sub-folder in " + path);
 
-		// Check if the folder already exists, if not create it
-		Folder newFolder = (Folder) getObject(session, path, folderName);
-		if(newFolder == null) {
+		// Check if the folder already exists, if not create it. Asks the repository, not the cache, as another
+		// instance may have created it since the caller looked
+		String folderPath = objectPath(path, folderName);
+		if(folderPermissions(session, folderPath, true) == null) {
 			Map<String, Object> newFolderProps = new HashMap<String, Object>();
 			newFolderProps.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
 			newFolderProps.put(PropertyIds.NAME, folderName);
-			newFolder = parentFolder.createFolder(newFolderProps);
-			logger.info("Created new folder: " + newFolder.getPath() + " [creator=" + newFolder.getCreatedBy() + "][created=" +
-						date2String(newFolder.getCreationDate().getTime()) + "]");
+			try {
+				session.createFolder(newFolderProps, session.createObjectId(parentId));
+			} catch (CmisObjectNotFoundException e) {
+				// The cached parent id went stale, the next request looks the parent up again
+				permissionCache.invalidate(path);
+				throw e;
+			}
+			logger.info("event=folder.created path={} creator={}", folderPath,
+					session.getSessionParameters().get(SessionParameter.USER));
 			
 			return true;
 		} else {
-			logger.info("Folder already exist: " + newFolder.getPath());
+			logger.debug("event=folder.exists path={}", folderPath);
 			
 			return false;
 		}
@@ -302,7 +400,7 @@ public class AlfrescoClient {
 			// Get the path for the folder.
 			folder = (Folder) session.getObjectByPath(path);
 		}catch(CmisObjectNotFoundException e) {
-			logger.info("Folder already exists: " + path);
+			logger.info("Folder does not exist: {}", path);
 		}
 		
 		return folder;
@@ -322,43 +420,184 @@ public class AlfrescoClient {
 	 */
 	public void uploadDocument(Session session, String fileName, String mimeType, InputStream fileContent, 
 						long fileSize, String description, String path) throws IOException {
+		uploadDocument(session, fileName, mimeType, fileContent, fileSize, description, path, (ContentHash) null);
+	}
+
+	/**
+	 * Upload a document on a particular path and store the hash of its content, see {@link #isHashStored}.
+	 * @param session The current session with the Alfresco object.
+	 * @param fileName		The name of the file retrieved from the Part object in HTTP servlet post.
+	 * @param mimeType		The type of the file retrieved from the Part object in HTTP servlet post.
+	 * @param fileContent	The inputstream of the file retrieved from the Part object in HTTP servlet.
+	 * @param fileSize		The size of the file retrieved from the Part object in HTTP servlet.
+	 * @param description	The description of the file. From a form parameter in the post request.
+	 * @param path			The folder path to place the file.		
+	 * @param hash			The SHA-256 of the content as hex, may be null.
+	 * @return				The id of the new document, null if a document with that name already exists.
+	 * @throws IOException
+	 */
+	public String uploadDocument(Session session, String fileName, String mimeType, InputStream fileContent, 
+						long fileSize, String description, String path, String hash) throws IOException {
+		return uploadDocument(session, fileName, mimeType, fileContent, fileSize, description, path,
+				hash == null ? null : () -> hash);
+	}
+
+	/**
+	 * Computes the SHA-256 of a file's content as hex, only called when the document is created.
+	 */
+	public interface ContentHash {
+		String compute() throws IOException;
+	}
+
+	/**
+	 * Upload a document like {@link #uploadDocument(Session, String, String, InputStream, long, String, String, String)},
+	 * computing the hash only if the document does not exist yet.
+	 * @param hash	Computes the SHA-256 of the content, may be null.
+	 */
+	public String uploadDocument(Session session, String fileName, String mimeType, InputStream fileContent,
+						long fileSize, String description, String path, ContentHash hash) throws IOException {
 
-		Folder parentFolder = getFolder(session, path);
-		
-		
 		// Make sure the user is allowed to create a document
 		// in the passed in folder
-		if(parentFolder.getAllowableActions().getAllowableActions().contains(Action.CAN_CREATE_DOCUMENT)==false){
-			throw new CmisUnauthorizedException("Current user does not have permission to " +
-					"create a document in " + parentFolder.getPath());
-		}
+		String parentId = checkFolderPermission(session, path, Action.CAN_CREATE_DOCUMENT,
+				"Current user does not have permission to create a document in " + path);
 
 		// Check if document already exists, if not create it
 		Document newDocument = (Document) getObject(session, path, fileName);
 		if(newDocument == null) {
 			// Setup document metadata
 			Map<String, Object> newDocumentProps = new HashMap<String, Object>();
-			newDocumentProps.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document");
+			newDocumentProps.put(PropertyIds.OBJECT_TYPE_ID, DOCUMENT_TYPE);
 			newDocumentProps.put(PropertyIds.NAME, fileName);
 			newDocumentProps.put(PropertyIds.DESCRIPTION, description);
+			putHash(session, DOCUMENT_TYPE, hash == null ? null : hash.compute(), newDocumentProps);
 			
 
 			ContentStream contentStream = session.getObjectFactory().createContentStream(fileName, fileSize, mimeType, fileContent);
 
 
 			// Create versioned document object
-			newDocument = parentFolder.createDocument(newDocumentProps, contentStream, VersioningState.MAJOR);
-			logger.info("Created new document: " + 
-					getDocumentPath(newDocument) + " [version=" + 
-					newDocument.getVersionLabel() + "][creator=" + 
-					newDocument.getCreatedBy() + "][created=" + 
-					date2String(newDocument.getCreationDate().getTime())+"]");
+			ObjectId created;
+			try {
+				created = session.createDocument(newDocumentProps, session.createObjectId(parentId), contentStream,
+						VersioningState.MAJOR);
+			} catch (CmisObjectNotFoundException e) {
+				// The cached folder id went stale, the next request looks the folder up again
+				permissionCache.invalidate(path);
+				throw e;
+			}
+			if (logger.isInfoEnabled()) {
+				logger.info("event=document.created path={} id={} size={}", objectPath(path, fileName),
+						created.getId(), fileSize);
+			}
+			return created.getId();
 		} else {
-			logger.info("Document already exist: " + 
-					getDocumentPath(newDocument));
+			if (logger.isInfoEnabled()) {
+				logger.info("event=document.exists path={}", objectPath(path, fileName));
+			}
+			return null;
+		}
+
+
+	}
+
+	/**
+	 * Check out the existing documents of a group of related documents, the first step of a versioned
+	 * group upload. If one of them can not be checked out the check outs done so far are cancelled, so
+	 * a failure leaves the group untouched. Documents that do not exist yet are left out.
+	 * @param session		The current session with the Alfresco object.
+	 * @param path			The folder path of the group.
+	 * @param names			The names of the documents in the group.
+	 * @return				The private working copy ids by document name.
+	 */
+	public Map<String, ObjectId> checkOutVersions(Session session, String path, Collection<String> names) {
+		Map<String, ObjectId> workingCopies = new HashMap<String, ObjectId>();
+		try {
+			for (String name : names) {
+				Document existing = getDocumentSummary(session, path, name);
+				if (existing == null || workingCopies.containsKey(name)) {
+					continue;
+				}
+				if (!existing.getAllowableActions().getAllowableActions().contains(Action.CAN_CHECK_OUT)) {
+					throw new CmisUnauthorizedException("Current user does not have permission to check out "
+							+ objectPath(path, name));
+				}
+				workingCopies.put(name, existing.checkOut());
+			}
+		} catch (CmisBaseException e) {
+			cancelCheckOuts(session, workingCopies.values());
+			throw e;
 		}
+		return workingCopies;
+	}
 
+	/**
+	 * Upload one document of a versioned group, see {@link #checkOutVersions}. A checked out document
+	 * gets a new version through checkin, any other document is created. The content is streamed from
+	 * the item straight into the repository, it is never copied on the heap. If the upload fails the
+	 * working copy is cancelled.
+	 * @param session		The session to send the content with, plain or compressed.
+	 * @param path			The folder path to place the file.
+	 * @param item			The file to upload.
+	 * @param workingCopyId	The private working copy of the existing document, null for a new document.
+	 * @param description	The description of a newly created file.
+	 * @param major			True for a major version, false for a minor version.
+	 * @param comment		The check in comment.
+	 * @return				The result of the item.
+	 */
+	public UploadResult uploadVersion(Session session, String path, UploadItem item, ObjectId workingCopyId,
+			String description, boolean major, String comment) {
+		try {
+			String parentId = checkFolderPermission(session, path, Action.CAN_CREATE_DOCUMENT,
+					"Current user does not have permission to create a document in " + path);
+			ContentStream contentStream = session.getObjectFactory().createContentStream(item.getName(), item.getSize(),
+					item.getMimeType(), item.getStream());
+			if (workingCopyId != null) {
+				// Fetched through the session the content goes with, so the check in uses its compression
+				Document workingCopy = (Document) session.getObject(workingCopyId, session.createOperationContext(
+						Collections.singleton(PropertyIds.OBJECT_ID), false, false, false, IncludeRelationships.NONE,
+						Collections.singleton("cmis:none"), false, null, false, 1));
+				Map<String, Object> versionProps = new HashMap<String, Object>();
+				putHash(session, workingCopy.getType().getId(), item.getHash(), versionProps);
+				ObjectId version = workingCopy.checkIn(major, versionProps.isEmpty() ? null : versionProps,
+						contentStream, comment);
+				return new UploadResult(item.getName(), version.getId(), UploadResult.VERSIONED, null);
+			}
+			Map<String, Object> newDocumentProps = new HashMap<String, Object>();
+			newDocumentProps.put(PropertyIds.OBJECT_TYPE_ID, DOCUMENT_TYPE);
+			newDocumentProps.put(PropertyIds.NAME, item.getName());
+			newDocumentProps.put(PropertyIds.DESCRIPTION, description);
+			putHash(session, DOCUMENT_TYPE, item.getHash(), newDocumentProps);
+			ObjectId created = session.createDocument(newDocumentProps, session.createObjectId(parentId), contentStream,
+					major ? VersioningState.MAJOR : VersioningState.MINOR);
+			return new UploadResult(item.getName(), created.getId(), UploadResult.CREATED, null);
+		} catch (CmisBaseException e) {
+			if (e instanceof CmisObjectNotFoundException) {
+				// The cached folder id went stale, the next request looks the folder up again
+				permissionCache.invalidate(path);
+			}
+			logger.error("event=document.version.failed path={} error={}", objectPath(path, item.getName()), e.getMessage());
+			if (workingCopyId != null) {
+				cancelCheckOuts(session, Collections.singletonList(workingCopyId));
+			}
+			return new UploadResult(item.getName(), null, UploadResult.FAILED, e.getMessage());
+		}
+	}
 
+	/**
+	 * Cancel check outs made by {@link #checkOutVersions} that were not checked in.
+	 * @param session		The current session with the Alfresco object.
+	 * @param workingCopies	The private working copy ids.
+	 */
+	public void cancelCheckOuts(Session session, Collection<ObjectId> workingCopies) {
+		for (ObjectId workingCopy : workingCopies) {
+			try {
+				session.getBinding().getVersioningService().cancelCheckOut(session.getRepositoryInfo().getId(),
+						workingCopy.getId(), null);
+			} catch (CmisBaseException e) {
+				logger.error("Could not cancel check out of {}: {}", workingCopy.getId(), e.getMessage());
+			}
+		}
 	}
   
 	/**
@@ -386,11 +625,10 @@ public class AlfrescoClient {
 			Map<String, Object> newFolderProps = new HashMap<String, Object>();
 			newFolderProps.put(PropertyIds.NAME, newFolderName);
 			updatedFolder = (Folder) folder.updateProperties(newFolderProps);
+			permissionCache.invalidate(path);
 
-			logger.info("Updated " + oldName + " with new name: " + 
-					updatedFolder.getPath() + " [creator=" + updatedFolder.getCreatedBy() + "][created=" +
-					date2String(updatedFolder.getCreationDate().getTime()) + "][modifier=" + updatedFolder.getLastModifiedBy() + "][modified="+date2String(updatedFolder.
-							getLastModificationDate().getTime()) + "]");
+			logger.info("event=folder.renamed from={} path={} modifier={}", oldName, updatedFolder.getPath(),
+					updatedFolder.getLastModifiedBy());
 		} else {
 			logger.error("Folder to update is null!");
 		}
@@ -406,12 +644,24 @@ public class AlfrescoClient {
   	 * @throws IOException
   	 */
   	public void updateDocument(Session session, String path, String documentName, String newDocumentText) throws IOException {
-  		RepositoryInfo repoInfo = session.getRepositoryInfo();
-  		if (!repoInfo.getCapabilities().getContentStreamUpdatesCapability().equals(CapabilityContentStreamUpdates.ANYTIME)) {
-  			    logger.warn("Updating content stream without a checkout is" +
-  			    " not supported by this repository [repoName=" +
-  			    repoInfo.getProductName() + "][repoVersion=" + 
-  			    repoInfo.getProductVersion() + "]");
+  		byte[] bytes = newDocumentText.getBytes("UTF-8");
+  		updateDocument(session, path, documentName, new ByteArrayInputStream(bytes), bytes.length, "text/plain; charset=UTF-8");
+  	}
+
+  	/**
+  	 * Replace the content of a document. The content is streamed to the repository as is.
+  	 * @param session			The current alfresco session.
+  	 * @param path				The path of the document you would like to update.
+  	 * @param documentName		The name of the document you want to update.
+  	 * @param content			The new content of the document.
+  	 * @param size				The size of the new content, -1 if unknown.
+  	 * @param mimetype			The MIME type of the new content.
+  	 */
+  	public void updateDocument(Session session, String path, String documentName, InputStream content, long size,
+  			String mimetype) {
+  		RepositoryCapabilitiesSnapshot repoCapabilities = getCapabilities(session);
+  		if (!repoCapabilities.isContentStreamUpdatableAnytime()) {
+  			    logger.warn("Updating content stream without a checkout is not supported by this repository {}", repoCapabilities);
   		}
 
   		Document document = (Document) getObject(session, path, documentName);
@@ -423,31 +673,308 @@ public class AlfrescoClient {
   			if (document.getAllowableActions().getAllowableActions().contains(Action.CAN_SET_CONTENT_STREAM) == false) {
   				throw new CmisUnauthorizedException("Current user does not" 
   						+ " have permission to set/update content stream for " +
-  						getDocumentPath(document));
+  						objectPath(path, documentName));
   			}
 
-  			String mimetype = "text/plain; charset=UTF-8";
-  			byte[] bytes = newDocumentText.getBytes("UTF-8");
-  			ByteArrayInputStream input = new ByteArrayInputStream(bytes);
-  			ContentStream contentStream = session.getObjectFactory().createContentStream(document.getName(), bytes.length, mimetype, input);
+  			ContentStream contentStream = session.getObjectFactory().createContentStream(document.getName(), size, mimetype, content);
 
 
   			boolean overwriteContent = true;
   			updatedDocument = document.setContentStream(contentStream, overwriteContent);
   			if (updatedDocument == null) {
-  				logger.info("No new version was created when content stream was updated for " + getDocumentPath(document));
   				updatedDocument = document;
   			}
 
-  			logger.info("Updated content for document: " + getDocumentPath(updatedDocument) +
-  					" [version=" + updatedDocument.getVersionLabel() + "][modifier=" + updatedDocument.getLastModifiedBy() +
-  					"][modified=" + date2String(updatedDocument.
-  							getLastModificationDate().getTime()) + "]");
+  			if (logger.isInfoEnabled()) {
+  				logger.info("event=document.updated path={} version={} size={}", objectPath(path, documentName),
+  						updatedDocument.getVersionLabel(), size);
+  			}
   		} else {
   			logger.info("Document is null, cannot update it!");
   		}
   	}
 
+  	/**
+  	 * Apply the same property changes to many objects with CMIS bulkUpdateProperties. The objects are
+  	 * resolved and updated in batches of batchSize, one update call per batch. Within a batch the ids
+  	 * are resolved with one query and the paths with one query per parent folder (minimal operation
+  	 * context, no allowable actions, ACLs or renditions), what the queries do not find or a repository
+  	 * without query support is looked up one object at a time. If the repository does not support bulk
+  	 * updates the batch falls back to one updateProperties call per object. Values are converted to the
+  	 * types the object types (and their secondary types) define, i.e. an ISO-8601 string for a date.
+  	 * @param session		The current alfresco session.
+  	 * @param objectIds		The ids of the objects to update, may be empty.
+  	 * @param paths			The repository paths of the objects to update, may be empty.
+  	 * @param properties	The property ids and new values.
+  	 * @param batchSize		The number of objects sent per bulk update call.
+  	 * @return				One result per requested id or path, in request order (ids first, then paths).
+  	 */
+  	public List<BulkUpdateResult> bulkUpdateProperties(Session session, List<String> objectIds, List<String> paths,
+  			Map<String, Object> properties, int batchSize) {
+  		Set<String> filter = new HashSet<String>(Arrays.asList(PropertyIds.OBJECT_ID, PropertyIds.OBJECT_TYPE_ID,
+  				PropertyIds.SECONDARY_OBJECT_TYPE_IDS, PropertyIds.BASE_TYPE_ID, PropertyIds.CHANGE_TOKEN, PropertyIds.NAME));
+  		OperationContext context = session.createOperationContext(filter, false, false, false,
+  				IncludeRelationships.NONE, Collections.singleton("cmis:none"), false, null, false, batchSize);
+  		boolean queryable = getCapabilities(session).getQueryCapability() != CapabilityQuery.NONE;
+
+  		List<String> references = new ArrayList<String>();
+  		List<Boolean> byPath = new ArrayList<Boolean>();
+  		for (String objectId : objectIds) {
+  			references.add(objectId);
+  			byPath.add(false);
+  		}
+  		for (String path : paths) {
+  			references.add(path);
+  			byPath.add(true);
+  		}
+
+  		BulkUpdateResult[] results = new BulkUpdateResult[references.size()];
+  		for (int start = 0; start < references.size(); start += batchSize) {
+  			int end = Math.min(start + batchSize, references.size());
+  			// Request position -> object, several positions may point at the same object
+  			Map<Integer, CmisObject> resolved = new LinkedHashMap<Integer, CmisObject>();
+  			if (queryable) {
+  				try {
+  					resolveByQuery(session, references, byPath, start, end, context, resolved);
+  				} catch (CmisBaseException | IllegalArgumentException e) {
+  					logger.warn("event=bulk.query.failed objects={} error={}", end - start, e.getMessage());
+  				}
+  			}
+  			for (int i = start; i < end; i++) {
+  				if (resolved.containsKey(i)) {
+  					continue;
+  				}
+  				String reference = references.get(i);
+  				try {
+  					resolved.put(i, byPath.get(i) ? session.getObjectByPath(reference, context)
+  							: session.getObject(reference, context));
+  				} catch (CmisObjectNotFoundException e) {
+  					results[i] = new BulkUpdateResult(reference, null, BulkUpdateResult.NOT_FOUND, null);
+  				} catch (CmisBaseException | IllegalArgumentException e) {
+  					results[i] = new BulkUpdateResult(reference, null, BulkUpdateResult.FAILED, e.getMessage());
+  				}
+  			}
+  			if (!resolved.isEmpty()) {
+  				updateBatch(session, references, resolved, properties, results);
+  			}
+  		}
+  		logger.info("event=bulk.updated properties={} objects={}", properties.keySet(), references.size());
+  		return Arrays.asList(results);
+  	}
+
+  	/*
+  	 * Resolve the references of one batch by query: the ids with one query, the paths with one query
+  	 * per parent folder. References the queries do not find are left out of resolved.
+  	 */
+  	private void resolveByQuery(Session session, List<String> references, List<Boolean> byPath, int start, int end,
+  			OperationContext context, Map<Integer, CmisObject> resolved) {
+  		Map<String, List<Integer>> ids = new LinkedHashMap<String, List<Integer>>();
+  		// Parent folder path -> name -> request positions
+  		Map<String, Map<String, List<Integer>>> names = new LinkedHashMap<String, Map<String, List<Integer>>>();
+  		for (int i = start; i < end; i++) {
+  			String reference = references.get(i);
+  			if (!byPath.get(i)) {
+  				ids.computeIfAbsent(reference, k -> new ArrayList<Integer>()).add(i);
+  				continue;
+  			}
+  			int slash = reference.lastIndexOf('/');
+  			if (slash < 0 || slash == reference.length() - 1) {
+  				// The root folder or not an absolute path, looked up on its own
+  				continue;
+  			}
+  			String parent = slash == 0 ? "/" : reference.substring(0, slash);
+  			names.computeIfAbsent(parent, k -> new LinkedHashMap<String, List<Integer>>())
+  					.computeIfAbsent(reference.substring(slash + 1), k -> new ArrayList<Integer>()).add(i);
+  		}
+  		if (!ids.isEmpty()) {
+  			queryInto(session, PropertyIds.OBJECT_ID, ids, null, context, resolved);
+  		}
+  		for (Map.Entry<String, Map<String, List<Integer>>> entry : names.entrySet()) {
+  			CmisObject parent;
+  			try {
+  				parent = session.getObjectByPath(entry.getKey(), context);
+  			} catch (CmisObjectNotFoundException e) {
+  				// Every path in it is reported as not found by the lookups
+  				continue;
+  			}
+  			queryInto(session, PropertyIds.NAME, entry.getValue(), parent.getId(), context, resolved);
+  		}
+  	}
+
+  	/*
+  	 * Query documents, then folders, whose property is one of the wanted values, optionally in one folder.
+  	 */
+  	private void queryInto(Session session, String property, Map<String, List<Integer>> wanted, String folderId,
+  			OperationContext context, Map<Integer, CmisObject> resolved) {
+  		Map<String, List<Integer>> left = new LinkedHashMap<String, List<Integer>>(wanted);
+  		for (BaseTypeId type : Arrays.asList(BaseTypeId.CMIS_DOCUMENT, BaseTypeId.CMIS_FOLDER)) {
+  			if (left.isEmpty()) {
+  				return;
+  			}
+  			StringBuilder where = new StringBuilder();
+  			if (folderId != null) {
+  				where.append("IN_FOLDER(").append(queryLiteral(folderId)).append(") AND ");
+  			}
+  			where.append(property).append(" IN (");
+  			boolean first = true;
+  			for (String value : left.keySet()) {
+  				where.append(first ? "" : ", ").append(queryLiteral(value));
+  				first = false;
+  			}
+  			where.append(')');
+  			for (CmisObject object : session.queryObjects(type.value(), where.toString(), false, context).getPage(left.size())) {
+  				List<Integer> positions = left.remove(PropertyIds.OBJECT_ID.equals(property) ? object.getId() : object.getName());
+  				if (positions != null) {
+  					for (Integer position : positions) {
+  						resolved.put(position, object);
+  					}
+  				}
+  			}
+  		}
+  	}
+
+  	private static String queryLiteral(String value) {
+  		return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+  	}
+
+  	private void updateBatch(Session session, List<String> references, Map<Integer, CmisObject> resolved,
+  			Map<String, Object> properties, BulkUpdateResult[] results) {
+  		// An id requested twice, or a path and an id of the same object, is sent once
+  		Map<String, CmisObject> objects = new LinkedHashMap<String, CmisObject>();
+  		for (CmisObject object : resolved.values()) {
+  			objects.putIfAbsent(object.getId(), object);
+  		}
+  		// Object id -> error message, objects not in it were updated
+  		Map<String, String> failures = new HashMap<String, String>();
+  		Map<String, Object> typed = null;
+  		try {
+  			typed = typedProperties(session, objects.values(), properties);
+  			if (!getCapabilities(session).isBulkUpdateSupported()) {
+  				throw new CmisNotSupportedException("Bulk update requires CMIS 1.1");
+  			}
+  			List<BulkUpdateObjectIdAndChangeToken> updated = session.bulkUpdateProperties(
+  					new ArrayList<CmisObject>(objects.values()), typed, null, null);
+  			Set<String> updatedIds = new HashSet<String>();
+  			if (updated != null) {
+  				for (BulkUpdateObjectIdAndChangeToken token : updated) {
+  					updatedIds.add(token.getId());
+  				}
+  			}
+  			for (String objectId : objects.keySet()) {
+  				if (!updatedIds.contains(objectId)) {
+  					failures.put(objectId, "Object was not updated by the repository");
+  				}
+  			}
+  		} catch (CmisNotSupportedException e) {
+  			logger.warn("Bulk update is not supported by the repository, updating {} object(s) one by one", objects.size());
+  			for (CmisObject object : objects.values()) {
+  				try {
+  					object.updateProperties(typed, false);
+  				} catch (CmisBaseException | IllegalArgumentException ue) {
+  					failures.put(object.getId(), ue.getMessage());
+  				}
+  			}
+  		} catch (CmisBaseException | IllegalArgumentException e) {
+  			logger.error("Bulk update of {} object(s) failed: {}", objects.size(), e.getMessage());
+  			for (String objectId : objects.keySet()) {
+  				failures.put(objectId, e.getMessage());
+  			}
+  		}
+  		for (Map.Entry<Integer, CmisObject> entry : resolved.entrySet()) {
+  			String objectId = entry.getValue().getId();
+  			boolean ok = !failures.containsKey(objectId);
+  			results[entry.getKey()] = new BulkUpdateResult(references.get(entry.getKey()), objectId,
+  					ok ? BulkUpdateResult.UPDATED : BulkUpdateResult.FAILED, failures.get(objectId));
+  		}
+  	}
+
+  	/*
+  	 * The property values as the types of the objects define them. JSON brings strings, whole numbers,
+  	 * doubles and booleans, CMIS wants GregorianCalendar for dates and BigInteger or BigDecimal for
+  	 * numbers. Properties none of the types define are passed on as they are, for the repository to refuse.
+  	 * Type definitions are cached by the session.
+  	 */
+  	Map<String, Object> typedProperties(Session session, Collection<CmisObject> objects, Map<String, Object> properties) {
+  		Set<String> typeIds = new LinkedHashSet<String>();
+  		for (CmisObject object : objects) {
+  			Object typeId = object.getPropertyValue(PropertyIds.OBJECT_TYPE_ID);
+  			if (typeId != null) {
+  				typeIds.add(typeId.toString());
+  			}
+  			Object secondaryTypeIds = object.getPropertyValue(PropertyIds.SECONDARY_OBJECT_TYPE_IDS);
+  			if (secondaryTypeIds instanceof List) {
+  				for (Object secondaryTypeId : (List<?>) secondaryTypeIds) {
+  					typeIds.add(secondaryTypeId.toString());
+  				}
+  			}
+  		}
+  		Map<String, PropertyDefinition<?>> definitions = new HashMap<String, PropertyDefinition<?>>();
+  		for (String typeId : typeIds) {
+  			for (Map.Entry<String, PropertyDefinition<?>> entry : session.getTypeDefinition(typeId).getPropertyDefinitions().entrySet()) {
+  				definitions.putIfAbsent(entry.getKey(), entry.getValue());
+  			}
+  		}
+  		Map<String, Object> typed = new LinkedHashMap<String, Object>();
+  		for (Map.Entry<String, Object> property : properties.entrySet()) {
+  			PropertyDefinition<?> definition = definitions.get(property.getKey());
+  			typed.put(property.getKey(), definition == null ? property.getValue()
+  					: typedValue(property.getKey(), definition.getPropertyType(), property.getValue()));
+  		}
+  		return typed;
+  	}
+
+  	private Object typedValue(String propertyId, PropertyType type, Object value) {
+  		if (value == null) {
+  			return null;
+  		}
+  		if (value instanceof List) {
+  			List<Object> values = new ArrayList<Object>();
+  			for (Object element : (List<?>) value) {
+  				values.add(typedValue(propertyId, type, element));
+  			}
+  			return values;
+  		}
+  		try {
+  			switch (type) {
+  			case DATETIME:
+  				if (value instanceof Number) {
+  					GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone(ZoneOffset.UTC));
+  					calendar.setTimeInMillis(((Number) value).longValue());
+  					return calendar;
+  				}
+  				return parseDateTime(value.toString());
+  			case INTEGER:
+  				return value instanceof BigInteger ? value : new BigDecimal(value.toString()).toBigIntegerExact();
+  			case DECIMAL:
+  				return value instanceof BigDecimal ? value : new BigDecimal(value.toString());
+  			case BOOLEAN:
+  				if (value instanceof Boolean) {
+  					return value;
+  				}
+  				if ("true".equalsIgnoreCase(value.toString()) || "false".equalsIgnoreCase(value.toString())) {
+  					return Boolean.valueOf(value.toString());
+  				}
+  				throw new NumberFormatException();
+  			default:
+  				// String, id, URI and HTML properties
+  				return value.toString();
+  			}
+  		} catch (ArithmeticException | DateTimeParseException | NumberFormatException e) {
+  			throw new IllegalArgumentException("Property " + propertyId + " takes " + type.value() + " values, not " + value);
+  		}
+  	}
+
+  	/*
+  	 * An ISO-8601 date and time with offset, i.e. "2017-10-01T08:30:00Z", or a date, taken as midnight UTC.
+  	 */
+  	private static GregorianCalendar parseDateTime(String value) {
+  		try {
+  			return GregorianCalendar.from(ZonedDateTime.parse(value));
+  		} catch (DateTimeParseException e) {
+  			return GregorianCalendar.from(LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC));
+  		}
+  	}
+
   	/**
   	 * Delete the document passed in.
   	 * @param session		The current alfresco session.
@@ -468,10 +995,11 @@ public class AlfrescoClient {
   						document.getName()+" with Object ID "+document.getId());
   			}
 
-  			String docPath = getDocumentPath(document);
   			boolean deleteAllVersions = true;
   			document.delete(deleteAllVersions);
-  			logger.info("Deleted document: " + docPath);
+  			if (logger.isInfoEnabled()) {
+  				logger.info("event=document.deleted path={}", objectPath(path, documentName));
+  			}
   		} else {
   			logger.info("Cannot delete document as it is null!");
   		}
@@ -483,35 +1011,46 @@ public class AlfrescoClient {
   	 * @param path		The path of the folder to be deleted. The last part of the path is the folder to be deleted. 
   	 */
   	public void deleteFolder(Session session, String path) {
-  		Folder folder = getFolder(session, path);
   		UnfileObject unfileMode = UnfileObject.UNFILE;
-  		RepositoryInfo repoInfo = session.getRepositoryInfo();
-  		if (!repoInfo.getCapabilities().isUnfilingSupported()) {
-  			logger.warn("The repository does not support unfiling a document from a folder, documents will " +
-  					"be deleted completely from all associated folders " + "[repoName=" + repoInfo.getProductName() + "][repoVersion=" + repoInfo.getProductVersion() + "]");
+  		RepositoryCapabilitiesSnapshot repoCapabilities = getCapabilities(session);
+  		if (!repoCapabilities.isUnfilingSupported()) {
+  			logger.debug("The repository does not support unfiling a document from a folder, documents will "
+  					+ "be deleted completely from all associated folders {}", repoCapabilities);
   			unfileMode = UnfileObject.DELETE;
   		}
+  		deleteFolder(session, path, unfileMode);
+  	}
 
+  	/**
+  	 * Delete the folder passed in, with an explicit way of handling documents that are also filed elsewhere.
+  	 * @param session		The current alfresco session.
+  	 * @param path			The path of the folder to be deleted.
+  	 * @param unfileMode	UNFILE keeps documents filed in other folders, DELETE removes them everywhere.
+  	 */
+  	public void deleteFolder(Session session, String path, UnfileObject unfileMode) {
+  		Permissions folder = folderPermissions(session, path);
   		
   		if (folder != null) {
   			// Make sure the user is allowed to delete the folder
-  			if (folder.getAllowableActions().getAllowableActions().contains(Action.CAN_DELETE_TREE) == false) {
+  			if (folder.allows(Action.CAN_DELETE_TREE) == false) {
   				throw new CmisUnauthorizedException("Current user does" + 
   						" not have permission to delete folder tree" + path);
   			}
 
   			boolean deleteAllVersions = true;
   			boolean continueOnFailure = true;
-  			List<String> failedObjectIds = folder.deleteTree(deleteAllVersions, unfileMode, continueOnFailure);
-  			logger.info("Deleted folder and all its content: " + folder.getName());
+  			List<String> failedObjectIds = session.deleteTree(session.createObjectId(folder.getObjectId()),
+  					deleteAllVersions, unfileMode, continueOnFailure);
+  			permissionCache.invalidate(path);
+  			logger.info("event=folder.deleted path={}", path);
   			
-  			if (failedObjectIds != null && failedObjectIds.size() > 1) {
+  			if (failedObjectIds != null && failedObjectIds.size() > 0) {
   				for (String failedObjectId : failedObjectIds) {
-  					logger.info("Could not delete Alfresco node with Node Ref: " + failedObjectId);
+  					logger.info("Could not delete Alfresco node with Node Ref: {}", failedObjectId);
   				}
   			}
   		} else {
-  			logger.info("Did not delete folder as it does not exist: " + path);
+  			logger.info("Did not delete folder as it does not exist: {}", path);
   		}
   	}
   	
@@ -536,14 +1075,249 @@ public class AlfrescoClient {
 
   			// Get the object content stream and write to 
   			input = document.getContentStream().getStream();
-  			logger.info("Grabbing document stream and returning " + documentName);
+  			if (logger.isDebugEnabled()) {
+  				logger.debug("event=document.read path={}", objectPath(path, documentName));
+  			}
   		} else {
-  			logger.error("Template document could not be found: " +
-  					path);
+  			logger.error("Template document could not be found: {}", path);
   		}
   		return input;
   	}
 
+  	/**
+  	 * Look up a document with a minimal operation context: identity, change token, content stream
+  	 * info and allowable actions, but no ACLs, policies, relationships or renditions.
+  	 * @param session		The current Alfresco session.
+  	 * @param path			The path the document is on.
+  	 * @param documentName	The name of the document.
+  	 * @return				The document or null if it does not exist.
+  	 */
+  	public Document getDocumentSummary(Session session, String path, String documentName) {
+  		Set<String> filter = new HashSet<String>(Arrays.asList(PropertyIds.OBJECT_ID, PropertyIds.OBJECT_TYPE_ID,
+  				PropertyIds.BASE_TYPE_ID, PropertyIds.NAME, PropertyIds.CHANGE_TOKEN, PropertyIds.LAST_MODIFICATION_DATE,
+  				PropertyIds.VERSION_LABEL, PropertyIds.CONTENT_STREAM_LENGTH, PropertyIds.CONTENT_STREAM_MIME_TYPE));
+  		OperationContext context = session.createOperationContext(filter, false, true, false,
+  				IncludeRelationships.NONE, Collections.singleton("cmis:none"), false, null, false, 1);
+  		try {
+  			CmisObject object = session.getObjectByPath(objectPath(path, documentName), context);
+  			return object instanceof Document ? (Document) object : null;
+  		} catch (CmisObjectNotFoundException e) {
+  			return null;
+  		}
+  	}
+
+  	/**
+  	 * Find the sub-folders of a folder created in a time range, oldest first. Uses a CMIS query when the
+  	 * repository supports queries and a sorted children listing otherwise.
+  	 * @param session		The current Alfresco session.
+  	 * @param path			The path of the parent folder.
+  	 * @param createdFrom	Only folders created at or after this moment, may be null.
+  	 * @param createdBefore	Only folders created before this moment.
+  	 * @param maxItems		The maximum number of folders to return.
+  	 * @return				The folders with id, name and creation date, empty if the parent does not exist.
+  	 */
+  	public List<CmisObject> findFoldersCreatedBetween(Session session, String path, Date createdFrom, Date createdBefore,
+  			int maxItems) {
+  		List<CmisObject> folders = new ArrayList<CmisObject>();
+  		Permissions parent = folderPermissions(session, path);
+  		if (parent == null) {
+  			return folders;
+  		}
+  		OperationContext context = session.createOperationContext(new HashSet<String>(Arrays.asList(PropertyIds.OBJECT_ID,
+  				PropertyIds.OBJECT_TYPE_ID, PropertyIds.BASE_TYPE_ID, PropertyIds.NAME, PropertyIds.CREATION_DATE)), false,
+  				false, false, IncludeRelationships.NONE, Collections.singleton("cmis:none"), false,
+  				PropertyIds.CREATION_DATE + " ASC", false, maxItems);
+
+  		if (getCapabilities(session).getQueryCapability() != CapabilityQuery.NONE) {
+  			StringBuilder where = new StringBuilder("IN_FOLDER('").append(parent.getObjectId().replace("'", "\\'"))
+  					.append("') AND ").append(PropertyIds.CREATION_DATE).append(" < TIMESTAMP '")
+  					.append(QUERY_TIMESTAMP.format(createdBefore.toInstant())).append("'");
+  			if (createdFrom != null) {
+  				where.append(" AND ").append(PropertyIds.CREATION_DATE).append(" >= TIMESTAMP '")
+  						.append(QUERY_TIMESTAMP.format(createdFrom.toInstant())).append("'");
+  			}
+  			for (CmisObject folder : session.queryObjects("cmis:folder", where.toString(), false, context).getPage(maxItems)) {
+  				folders.add(folder);
+  			}
+  			return folders;
+  		}
+
+  		Folder folder = (Folder) session.getObject(parent.getObjectId(), context);
+  		for (CmisObject child : folder.getChildren(context)) {
+  			if (folders.size() >= maxItems) {
+  				break;
+  			}
+  			Date created = child.getCreationDate().getTime();
+  			if (child instanceof Folder && created.before(createdBefore) && (createdFrom == null || !created.before(createdFrom))) {
+  				folders.add(child);
+  			}
+  		}
+  		return folders;
+  	}
+
+  	/**
+  	 * Read a string property of a folder, i.e. bookkeeping a background job keeps on the folder it works on.
+  	 * @param session		The current Alfresco session.
+  	 * @param path			The path of the folder.
+  	 * @param propertyId	The property, it must be defined on the folder type.
+  	 * @return				The value, null if it is not set or the folder does not exist.
+  	 */
+  	public String getFolderProperty(Session session, String path, String propertyId) {
+  		OperationContext context = session.createOperationContext(new HashSet<String>(Arrays.asList(PropertyIds.OBJECT_ID,
+  				PropertyIds.OBJECT_TYPE_ID, PropertyIds.BASE_TYPE_ID, propertyId)), false, false, false,
+  				IncludeRelationships.NONE, Collections.singleton("cmis:none"), false, null, false, 1);
+  		// Always read from the repository, another instance may have written it
+  		context.setCacheEnabled(false);
+  		try {
+  			CmisObject folder = session.getObjectByPath(path, context);
+  			Object value = folder.getPropertyValue(propertyId);
+  			return value instanceof String ? (String) value : null;
+  		} catch (CmisObjectNotFoundException e) {
+  			return null;
+  		}
+  	}
+
+  	/**
+  	 * Set a string property of a folder, see {@link #getFolderProperty}.
+  	 * @param session		The current Alfresco session.
+  	 * @param path			The path of the folder.
+  	 * @param propertyId	The property, it must be defined on the folder type.
+  	 * @param value			The value.
+  	 */
+  	public void setFolderProperty(Session session, String path, String propertyId, String value) {
+  		Permissions folder = folderPermissions(session, path);
+  		if (folder == null) {
+  			throw new CmisObjectNotFoundException("Folder does not exist: " + path);
+  		}
+  		Map<String, Object> properties = new HashMap<String, Object>();
+  		properties.put(propertyId, value);
+  		session.getObject(folder.getObjectId()).updateProperties(properties, false);
+  	}
+
+  	/**
+  	 * Open the content of a document by id, without fetching the document object.
+  	 * @param session	The current Alfresco session.
+  	 * @param objectId	The id of the document version.
+  	 * @return			The content stream, the caller must close it.
+  	 */
+  	public InputStream getContent(Session session, String objectId) {
+  		ContentStream content = session.getContentStream(session.createObjectId(objectId));
+  		if (content == null) {
+  			throw new CmisObjectNotFoundException("Document has no content: " + objectId);
+  		}
+  		return content.getStream();
+  	}
+
+  	/**
+  	 * List the documents of a folder with their name, content length and, if configured, content hash.
+  	 * The children are read in pages with a minimal operation context, one call per page.
+  	 * @param session	The current Alfresco session.
+  	 * @param path		The path of the folder.
+  	 * @return			The documents by name, empty if the folder does not exist.
+  	 */
+  	public Map<String, Document> listDocuments(Session session, String path) {
+  		Map<String, Document> documents = new HashMap<String, Document>();
+  		Permissions folder = folderPermissions(session, path);
+  		if (folder == null) {
+  			return documents;
+  		}
+  		Set<String> filter = new HashSet<String>(Arrays.asList(PropertyIds.OBJECT_ID, PropertyIds.OBJECT_TYPE_ID,
+  				PropertyIds.BASE_TYPE_ID, PropertyIds.NAME, PropertyIds.CONTENT_STREAM_LENGTH));
+  		if (isHashStored()) {
+  			filter.add(HASH_PROPERTY);
+  		}
+  		OperationContext context = session.createOperationContext(filter, false, false, false,
+  				IncludeRelationships.NONE, Collections.singleton("cmis:none"), false, null, false, 1000);
+  		Folder parent = (Folder) session.getObject(folder.getObjectId(), context);
+  		for (CmisObject child : parent.getChildren(context)) {
+  			if (child instanceof Document) {
+  				documents.put(child.getName(), (Document) child);
+  			}
+  		}
+  		return documents;
+  	}
+
+  	/**
+  	 * The type new documents are created with, alfresco.documentType.
+  	 */
+  	public String getDocumentType() {
+  		return DOCUMENT_TYPE;
+  	}
+
+  	/**
+  	 * True if documents carry the SHA-256 of their content in alfresco.manifest.hashProperty.
+  	 */
+  	public boolean isHashStored() {
+  		return HASH_PROPERTY != null && !HASH_PROPERTY.isEmpty();
+  	}
+
+  	/**
+  	 * The content hash stored on a document listed by {@link #listDocuments}, null if there is none.
+  	 */
+  	public String getStoredHash(Document document) {
+  		if (!isHashStored()) {
+  			return null;
+  		}
+  		Object hash = document.getPropertyValue(HASH_PROPERTY);
+  		return hash instanceof String ? (String) hash : null;
+  	}
+
+  	/**
+  	 * Store the content hash on a document created without it, i.e. when the hash was computed while the
+  	 * content was sent. Does nothing if the document type does not define the hash property.
+  	 * @param session	The current Alfresco session.
+  	 * @param objectId	The id of the document created by {@link #uploadDocument}.
+  	 * @param hash		The SHA-256 of the content as hex.
+  	 */
+  	public void storeHash(Session session, String objectId, String hash) {
+  		Map<String, Object> properties = new HashMap<String, Object>();
+  		putHash(session, DOCUMENT_TYPE, hash, properties);
+  		if (properties.isEmpty()) {
+  			return;
+  		}
+  		// Straight through the binding, the document does not have to be fetched first
+  		org.apache.chemistry.opencmis.commons.data.Properties converted = session.getObjectFactory().convertProperties(
+  				properties, session.getTypeDefinition(DOCUMENT_TYPE), null, EnumSet.of(Updatability.READWRITE));
+  		session.getBinding().getObjectService().updateProperties(session.getRepositoryInfo().getId(),
+  				new Holder<String>(objectId), null, converted, null);
+  	}
+
+  	/*
+  	 * Add the content hash to the properties of a new document or version, if the type defines the hash property.
+  	 * Type definitions are cached by the session, so this does not cost a repository call per upload.
+  	 */
+  	private void putHash(Session session, String typeId, String hash, Map<String, Object> properties) {
+  		if (hash == null || !isHashStored()) {
+  			return;
+  		}
+  		if (session.getTypeDefinition(typeId).getPropertyDefinitions().containsKey(HASH_PROPERTY)) {
+  			properties.put(HASH_PROPERTY, hash);
+  		}
+  	}
+
+  	/**
+  	 * Grabs the content of a rendition of a document.
+  	 * @param session	The current Alfresco session.
+  	 * @param objectId	The id of the document.
+  	 * @param kind		The rendition kind (i.e. cmis:thumbnail) or MIME type to look for.
+  	 * @return			The rendition content or null if the document has no such rendition.
+  	 */
+  	public ContentStream getRenditionContent(Session session, String objectId, String kind) {
+  		OperationContext context = session.createOperationContext(Collections.singleton(PropertyIds.OBJECT_ID), false,
+  				false, false, IncludeRelationships.NONE, Collections.singleton(kind), false, null, false, 1);
+  		CmisObject object = session.getObject(objectId, context);
+  		List<Rendition> renditions = object.getRenditions();
+  		if (renditions == null) {
+  			return null;
+  		}
+  		for (Rendition rendition : renditions) {
+  			if (kind.equals(rendition.getKind()) || kind.equals(rendition.getMimeType())) {
+  				return rendition.getContentStream();
+  			}
+  		}
+  		return null;
+  	}
+
   	/**
   	 * Copy the document from one folder to the other. 
   	 * @param session
@@ -557,8 +1331,8 @@ public class AlfrescoClient {
   	  Folder destFolder = getFolder(session, destinationFolder);
 
   	  if (destFolder == null) {
-  	    logger.error("Cannot copy " + document.getName() + ", could not find folder with the name " +
-  	    destFolder.getName().toString() + ", are you using Alfresco?");
+  	    logger.error("Cannot copy {}, could not find folder with the name {}, are you using Alfresco?", documentName,
+  	    destinationFolder);
   	    return;
   	  }
 
@@ -566,18 +1340,60 @@ public class AlfrescoClient {
   	  if (document != null) {
   	    try {
   	      document.copy(destFolder);
-  	      logger.info("Copied document " + document.getName() + "from folder " + parentFolder.getPath() +
-  	      " to folder " + destFolder.getPath());
-  	    } catch (CmisContentAlreadyExistsException e) {
-  	      logger.error("Cannot copy document " + document.getName() +
-  	      ", already exist in to folder " + 
+  	      logger.info("Copied document {} from folder {} to folder {}", document.getName(), parentFolder.getPath(),
   	      destFolder.getPath());
+  	    } catch (CmisContentAlreadyExistsException e) {
+  	      logger.error("Cannot copy document {}, already exist in to folder {}", document.getName(), destFolder.getPath());
   	    }
   	  } else {
-  	    logger.error("Document is null, cannot copy to " + destinationFolder);
+  	    logger.error("Document is null, cannot copy to {}", destinationFolder);
   	  }
   	}
   	
+  	/*
+  	 * Make sure the folder at a path exists and allows an action, from the permission cache if possible.
+  	 * Returns the id of the folder.
+  	 */
+  	private String checkFolderPermission(Session session, String path, Action action, String message) {
+  		Permissions folder = folderPermissions(session, path);
+  		if (folder == null) {
+  			throw new CmisObjectNotFoundException("Folder does not exist: " + path);
+  		}
+  		if (!folder.allows(action)) {
+  			throw new CmisUnauthorizedException(message);
+  		}
+  		return folder.getObjectId();
+  	}
+
+  	private Permissions folderPermissions(Session session, String path) {
+  		return folderPermissions(session, path, false);
+  	}
+
+  	/*
+  	 * The allowable actions of the folder at a path. On a cache miss, or always when fresh is set, the folder
+  	 * is fetched with only its id and allowable actions and the cache is updated. Returns null if there is
+  	 * no folder at the path.
+  	 */
+  	private Permissions folderPermissions(Session session, String path, boolean fresh) {
+  		Permissions cached = fresh ? null : permissionCache.get(session, path);
+  		if (cached != null) {
+  			return cached;
+  		}
+  		OperationContext context = session.createOperationContext(new HashSet<String>(Arrays.asList(
+  				PropertyIds.OBJECT_ID, PropertyIds.OBJECT_TYPE_ID, PropertyIds.BASE_TYPE_ID)), false, true, false,
+  				IncludeRelationships.NONE, Collections.singleton("cmis:none"), false, null, false, 1);
+  		try {
+  			CmisObject object = session.getObjectByPath(path, context);
+  			if (object instanceof Folder) {
+  				return permissionCache.put(session, path, object);
+  			}
+  		} catch (CmisObjectNotFoundException e) {
+  			// Deleted by someone else, do not let other callers find it in the cache
+  		}
+  		permissionCache.invalidate(path);
+  		return null;
+  	}
+
   	public CmisObject getObject(Session session, String path, String objectName) {
   		CmisObject object = null;
   		try {
@@ -595,42 +1411,14 @@ public class AlfrescoClient {
   	}
 
   	private String date2String(Date date) {
-  		return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z").format(date);
+  		return DATE_FORMAT.format(date.toInstant());
   	}
   	
 	/*
-	 * Finds the absolute repository path for a document.
+	 * Builds the repository path of an object from the folder path the caller already has.
 	 */
-	private String getDocumentPath(Document document) {
-		String path2Doc = getParentFolderPath(document);
-		if (!path2Doc.endsWith("/")) {
-			path2Doc += "/";
-		}
-		path2Doc += document.getName();
-		return path2Doc;
+	private String objectPath(String path, String objectName) {
+		return path.endsWith("/") ? path + objectName : path + "/" + objectName;
 	}
-  	
-	  
-	  private String getParentFolderPath(Document document) {
-		  Folder parentFolder = getDocumentParentFolder(document);
-		  return parentFolder == null ? "Un-filed": parentFolder.getPath();
-	  }
-	  
-	  private Folder getDocumentParentFolder(Document document) {
-		  // Get all the parent folders (could be more than on if multi-filed)
-		  List<Folder> parentFolders = document.getParents();
-		  
-		  // Grab the first parent folder
-		  if(parentFolders.size() > 0) {
-			  if(parentFolders.size() > 1) {
-				  logger.info("The " + document.getName() + "has more than one parent folder, it is multi-filed");
-				  
-			  }
-			  return parentFolders.get(0);
-		  }else {
-			  logger.info("Document " + document.getName() + "is un-filed and does not have a parent folder");
-			  return null;
-		  }
-	  }
 
 }
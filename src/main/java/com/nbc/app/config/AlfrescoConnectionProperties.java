@@ -0,0 +1,114 @@
+package com.nbc.app.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Binds the connection settings under the "alfresco" prefix. The top level url, userName,
+ * password and connectionName make up the default profile, additional named profiles
+ * and the routes pointing at them are optional. A named profile may not reuse the name of the
+ * default profile (connectionName, "default" when unset).
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+@ConfigurationProperties(prefix = "alfresco")
+public class AlfrescoConnectionProperties {
+
+	private String url;
+	private String userName;
+	private String password;
+	private String connectionName;
+	private String bindingType = "atompub";
+	private Map<String, String> parameters = new LinkedHashMap<String, String>();
+	private int maxConcurrentRequests = 20;
+	private long acquireTimeoutMillis = 30000;
+	private Map<String, ConnectionProfile> profiles = new LinkedHashMap<String, ConnectionProfile>();
+	private List<ConnectionRoute> routes = new ArrayList<ConnectionRoute>();
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public void setUserName(String userName) {
+		this.userName = userName;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public String getConnectionName() {
+		return connectionName;
+	}
+
+	public void setConnectionName(String connectionName) {
+		this.connectionName = connectionName;
+	}
+
+	public String getBindingType() {
+		return bindingType;
+	}
+
+	public void setBindingType(String bindingType) {
+		this.bindingType = bindingType;
+	}
+
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(Map<String, String> parameters) {
+		this.parameters = parameters;
+	}
+
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	public long getAcquireTimeoutMillis() {
+		return acquireTimeoutMillis;
+	}
+
+	public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+
+	public Map<String, ConnectionProfile> getProfiles() {
+		return profiles;
+	}
+
+	public void setProfiles(Map<String, ConnectionProfile> profiles) {
+		this.profiles = profiles;
+	}
+
+	public List<ConnectionRoute> getRoutes() {
+		return routes;
+	}
+
+	public void setRoutes(List<ConnectionRoute> routes) {
+		this.routes = routes;
+	}
+}
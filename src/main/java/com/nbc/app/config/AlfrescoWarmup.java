@@ -0,0 +1,156 @@
+package com.nbc.app.config;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Opens the CMIS sessions of all connection profiles once the application is up and loads
+ * the repository capabilities and the type definitions the upload paths use, cmis:folder and
+ * alfresco.documentType, plus any listed in alfresco.warmup.types, so the first requests after a
+ * deploy do not pay for it.
+ *
+ * Until the required profiles (the default profile and those with required: true) are warmed up
+ * the "alfrescoWarmup" health indicator reports OUT_OF_SERVICE, which makes the actuator /health
+ * endpoint answer 503 and keeps the instance out of rotation. The other profiles only show up in
+ * the health details, so one unreachable tenant repository does not take the service down.
+ * Profiles that fail are retried after alfresco.warmup.retryDelayMillis.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+public class AlfrescoWarmup extends AbstractHealthIndicator implements ApplicationListener<ApplicationReadyEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(AlfrescoWarmup.class);
+
+	@Value("${alfresco.warmup.enabled:true}")
+	boolean enabled;
+
+	@Value("${alfresco.warmup.retryDelayMillis:30000}")
+	long retryDelayMillis;
+
+	// Types to load besides the ones the upload paths use, i.e. secondary types set by bulk updates
+	@Value("${alfresco.warmup.types:}")
+	String[] typeIds;
+
+	@Autowired
+	AlfrescoClient alfrescoClient;
+
+	@Autowired
+	ConnectionRouter connectionRouter;
+
+	@Autowired
+	CompressionAdvisor compressionAdvisor;
+
+	// Per profile: "pending", "ready in <n> ms" or the last error
+	private Map<String, String> state = new ConcurrentHashMap<String, String>();
+	private volatile boolean ready;
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		if (!enabled) {
+			ready = true;
+			return;
+		}
+		for (ConnectionProfile profile : connectionRouter.getProfiles()) {
+			state.put(profile.getName(), "pending");
+		}
+		Thread warmup = new Thread(this::warmupAll, "alfresco-warmup");
+		warmup.setDaemon(true);
+		warmup.start();
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	@Override
+	protected void doHealthCheck(Health.Builder builder) throws Exception {
+		if (ready) {
+			builder.up();
+		} else {
+			builder.outOfService();
+		}
+		builder.withDetail("profiles", new LinkedHashMap<String, String>(state));
+	}
+
+	private void warmupAll() {
+		boolean allReady = false;
+		while (!allReady) {
+			allReady = true;
+			boolean requiredReady = true;
+			for (ConnectionProfile profile : connectionRouter.getProfiles()) {
+				if (state.get(profile.getName()).startsWith("ready")) {
+					continue;
+				}
+				try {
+					long start = System.currentTimeMillis();
+					warmup(profile);
+					state.put(profile.getName(), "ready in " + (System.currentTimeMillis() - start) + " ms");
+				} catch (RuntimeException e) {
+					allReady = false;
+					requiredReady &= !profile.isRequired();
+					state.put(profile.getName(), "failed: " + e.getMessage());
+					logger.warn("event=warmup.failed profile={} retryMillis={} error={}", profile.getName(), retryDelayMillis,
+							e.getMessage());
+				}
+			}
+			if (requiredReady && !ready) {
+				ready = true;
+				logger.info("event=warmup.ready profiles={}", state);
+			}
+			if (!allReady) {
+				try {
+					Thread.sleep(retryDelayMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		logger.info("event=warmup.completed profiles={}", state);
+	}
+
+	private void warmup(ConnectionProfile profile) {
+		warmup(alfrescoClient.getSession(profile, false));
+		if (compressionAdvisor.isEnabled()) {
+			warmup(alfrescoClient.getSession(profile, true));
+		}
+	}
+
+	private void warmup(Session session) {
+		alfrescoClient.getCapabilities(session);
+		for (String typeId : typesToWarm()) {
+			// Loaded into the type definition cache of the session binding
+			session.getTypeDefinition(typeId);
+		}
+	}
+
+	Set<String> typesToWarm() {
+		Set<String> types = new LinkedHashSet<String>();
+		types.add("cmis:folder");
+		types.add(alfrescoClient.getDocumentType());
+		if (typeIds != null) {
+			for (String typeId : typeIds) {
+				if (!typeId.trim().isEmpty()) {
+					types.add(typeId.trim());
+				}
+			}
+		}
+		return types;
+	}
+}
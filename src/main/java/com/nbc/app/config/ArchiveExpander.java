@@ -0,0 +1,384 @@
+package com.nbc.app.config;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Expands a ZIP or TAR archive (optionally gzip or bzip2 compressed) as a stream, nothing is
+ * written to local disk.
+ *
+ * Folders are reported in archive order, every folder before the files in it. Entries whose name
+ * leads outside the archive or whose data can not be read are rejected, links and other entries
+ * that are not regular files are skipped, both are reported and the expansion goes on. Files up to
+ * alfresco.archive.maxEntryBytes are read into memory and handed to a shared pool of
+ * alfresco.archive.parallelism threads, at most two per thread are buffered per archive. Larger
+ * files are handed over on the reading thread, streamed straight from the archive.
+ *
+ * An archive with more than alfresco.archive.maxEntries entries or more than
+ * alfresco.archive.maxTotalBytes of entry data is not expanded any further and fails the request.
+ * Data of skipped and rejected entries counts too.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+public class ArchiveExpander {
+
+	@Value("${alfresco.archive.parallelism:4}")
+	int parallelism;
+
+	@Value("${alfresco.archive.maxEntryBytes:4194304}")
+	int maxEntryBytes;
+
+	@Value("${alfresco.archive.maxEntries:10000}")
+	int maxEntries;
+
+	@Value("${alfresco.archive.maxTotalBytes:2147483648}")
+	long maxTotalBytes;
+
+	private ExecutorService executor;
+
+	/**
+	 * Receives the content of an archive. File callbacks run concurrently.
+	 */
+	public interface EntryHandler {
+
+		/**
+		 * A folder, relative to the archive root, i.e. "reports/junit".
+		 */
+		void folder(String path) throws IOException;
+
+		/**
+		 * A file, relative to the archive root. The content must not be used after the call returns.
+		 * @param size	The size of the content, -1 if unknown.
+		 */
+		void file(String path, InputStream content, long size) throws IOException;
+
+		/**
+		 * An entry that is not expanded because it is unsafe or unreadable.
+		 * @param name		The entry name as found in the archive.
+		 * @param reason	Why it was rejected.
+		 */
+		void rejected(String name, String reason);
+
+		/**
+		 * An entry that is not expanded because it is not a regular file or folder, i.e. a symbolic link.
+		 * @param name		The entry name as found in the archive.
+		 * @param reason	What kind of entry it is.
+		 */
+		void skipped(String name, String reason);
+	}
+
+	@PostConstruct
+	public void init() {
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(parallelism, r -> {
+			Thread thread = new Thread(r, "archive-upload-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Expand an archive and wait until every file has been handled.
+	 * @param content	The archive content, it is not closed.
+	 * @param handler	Receives the folders and files.
+	 * @throws IOException	If the archive can not be read or a handler failed.
+	 * @throws IllegalArgumentException	If the archive is not supported or exceeds the limits.
+	 */
+	public void expand(InputStream content, EntryHandler handler) throws IOException {
+		Set<String> folders = new HashSet<String>();
+		List<Future<?>> pending = new ArrayList<Future<?>>();
+		Semaphore buffered = new Semaphore(parallelism * 2);
+		Budget data = null;
+		boolean complete = false;
+		try (ArchiveInputStream<?> archive = open(content)) {
+			data = new Budget(archive);
+			int entries = 0;
+			for (ArchiveEntry entry = archive.getNextEntry(); entry != null; entry = next(archive, entry, data)) {
+				if (++entries > maxEntries) {
+					throw new IllegalArgumentException("Archive has more than " + maxEntries + " entries");
+				}
+				String path = normalize(entry.getName());
+				if (path == null) {
+					handler.rejected(entry.getName(), "Archive entry points outside the archive");
+					continue;
+				}
+				if (path.isEmpty()) {
+					continue;
+				}
+				String kind = unsupportedKind(entry);
+				if (kind != null) {
+					handler.skipped(entry.getName(), "Not a regular file: " + kind);
+					continue;
+				}
+				if (!archive.canReadEntryData(entry)) {
+					handler.rejected(entry.getName(), "Unsupported archive entry (encrypted or unknown compression)");
+					continue;
+				}
+				if (entry.isDirectory()) {
+					ensureFolders(path, folders, handler);
+					continue;
+				}
+				int slash = path.lastIndexOf('/');
+				if (slash > 0) {
+					ensureFolders(path.substring(0, slash), folders, handler);
+				}
+				long size = entry.getSize();
+				if (size > maxEntryBytes) {
+					handler.file(path, CloseShieldInputStream.wrap(data), size);
+					continue;
+				}
+				byte[] head = read(data, maxEntryBytes + 1);
+				if (head.length > maxEntryBytes) {
+					// Size was not in the header, stream the rest
+					InputStream rest = new SequenceInputStream(new ByteArrayInputStream(head), CloseShieldInputStream.wrap(data));
+					handler.file(path, rest, size);
+					continue;
+				}
+				buffered.acquire();
+				pending.add(executor.submit(() -> {
+					try {
+						handler.file(path, new ByteArrayInputStream(head), head.length);
+					} finally {
+						buffered.release();
+					}
+					return null;
+				}));
+			}
+			data.check();
+			complete = true;
+		} catch (IOException e) {
+			// A handler may have failed reading past the limit, the limit is what the caller has to know
+			if (data != null) {
+				data.check();
+			}
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while expanding archive");
+		} finally {
+			// Handlers may still use the caller's resources, always wait for them, but do not hide the first error
+			IOException failure = await(pending);
+			if (complete && failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/*
+	 * Next entry after reading what is left of the current one, so that it counts against the limit.
+	 */
+	private ArchiveEntry next(ArchiveInputStream<?> archive, ArchiveEntry entry, Budget data) throws IOException {
+		if (archive.canReadEntryData(entry)) {
+			byte[] buffer = new byte[8192];
+			while (data.read(buffer, 0, buffer.length) >= 0) {
+				// Drained
+			}
+		}
+		data.check();
+		return archive.getNextEntry();
+	}
+
+	private ArchiveInputStream<?> open(InputStream content) throws IOException {
+		InputStream in = new BufferedInputStream(CloseShieldInputStream.wrap(content));
+		try {
+			String compressor = CompressorStreamFactory.detect(in);
+			if (CompressorStreamFactory.GZIP.equals(compressor) || CompressorStreamFactory.BZIP2.equals(compressor)) {
+				in = new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(compressor, in));
+			} else {
+				throw new IllegalArgumentException("Unsupported archive compression: " + compressor);
+			}
+		} catch (CompressorException e) {
+			// Not compressed
+		}
+		try {
+			String format = ArchiveStreamFactory.detect(in);
+			if (ArchiveStreamFactory.ZIP.equals(format)) {
+				return new ZipArchiveInputStream(in, "UTF-8", true, true);
+			}
+			if (ArchiveStreamFactory.TAR.equals(format)) {
+				return new TarArchiveInputStream(in);
+			}
+			throw new IllegalArgumentException("Unsupported archive format: " + format);
+		} catch (ArchiveException e) {
+			throw new IllegalArgumentException("Not a ZIP or TAR archive");
+		}
+	}
+
+	private void ensureFolders(String path, Set<String> folders, EntryHandler handler) throws IOException {
+		if (folders.contains(path)) {
+			return;
+		}
+		int slash = path.lastIndexOf('/');
+		if (slash > 0) {
+			ensureFolders(path.substring(0, slash), folders, handler);
+		}
+		handler.folder(path);
+		folders.add(path);
+	}
+
+	/*
+	 * What kind of entry it is if it is neither a regular file nor a folder, null otherwise.
+	 */
+	private String unsupportedKind(ArchiveEntry entry) {
+		if (entry instanceof TarArchiveEntry) {
+			TarArchiveEntry tar = (TarArchiveEntry) entry;
+			if (tar.isSymbolicLink()) {
+				return "symbolic link";
+			}
+			if (tar.isLink()) {
+				return "hard link";
+			}
+			if (!tar.isDirectory() && !tar.isFile()) {
+				return "special file";
+			}
+		} else if (entry instanceof ZipArchiveEntry && ((ZipArchiveEntry) entry).isUnixSymlink()) {
+			return "symbolic link";
+		}
+		return null;
+	}
+
+	/*
+	 * Archive entry name to a relative path, null for names that would leave the target folder.
+	 */
+	private String normalize(String name) {
+		StringBuilder path = new StringBuilder();
+		for (String segment : name.replace('\\', '/').split("/")) {
+			if (segment.isEmpty() || ".".equals(segment)) {
+				continue;
+			}
+			if ("..".equals(segment)) {
+				return null;
+			}
+			if (path.length() > 0) {
+				path.append('/');
+			}
+			path.append(segment);
+		}
+		return path.toString();
+	}
+
+	private byte[] read(InputStream in, int limit) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(limit, 8192));
+		byte[] buffer = new byte[8192];
+		int count;
+		while (out.size() < limit && (count = in.read(buffer, 0, Math.min(buffer.length, limit - out.size()))) > 0) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	private IOException await(List<Future<?>> pending) {
+		IOException failure = null;
+		for (Future<?> future : pending) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = new IOException("Interrupted while waiting for archive uploads");
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+							: new IOException("Archive entry upload failed", e.getCause());
+				}
+			}
+		}
+		return failure;
+	}
+
+	/*
+	 * Entry data read from the archive, fails every read once more than maxTotalBytes were read.
+	 */
+	private class Budget extends FilterInputStream {
+		private long total;
+
+		Budget(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			count(b < 0 ? -1 : 1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			exceeded();
+			int count = in.read(b, off, len);
+			count(count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// Through read, skipped data counts as well
+			byte[] buffer = new byte[8192];
+			int count = read(buffer, 0, (int) Math.min(n, buffer.length));
+			return Math.max(count, 0);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		void check() {
+			if (total > maxTotalBytes) {
+				throw new IllegalArgumentException("Archive expands to more than " + maxTotalBytes + " bytes");
+			}
+		}
+
+		private void count(int count) throws IOException {
+			if (count > 0) {
+				total += count;
+			}
+			exceeded();
+		}
+
+		private void exceeded() throws IOException {
+			if (total > maxTotalBytes) {
+				throw new IOException("Archive expands to more than " + maxTotalBytes + " bytes");
+			}
+		}
+	}
+}
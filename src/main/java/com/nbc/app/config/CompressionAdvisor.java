@@ -0,0 +1,266 @@
+package com.nbc.app.config;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides per upload whether the request body should be gzip compressed on its way to Alfresco.
+ *
+ * Already compressed formats (archives, images, media) are never compressed, text like formats
+ * are always compressed once they reach the minimum size and anything else is decided on the
+ * compression ratio of a small sample of its head. Text is only sampled for the metrics, the first
+ * upload of a type and one in alfresco.compression.textSampleInterval after it. The sample ratio
+ * and the CPU time it took are kept per MIME type and published through the actuator /metrics endpoint.
+ * The MIME type comes from the client, so at most alfresco.compression.maxTrackedTypes types are
+ * kept, any other type is counted under "other".
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+public class CompressionAdvisor implements PublicMetrics {
+
+	private static final String METRIC_PREFIX = "alfresco.compression.";
+	private static final String OTHER_TYPES = "other";
+
+	@Value("${alfresco.compression.enabled:true}")
+	boolean enabled;
+
+	@Value("${alfresco.compression.minSize:65536}")
+	long minSize;
+
+	@Value("${alfresco.compression.sampleSize:65536}")
+	int sampleSize;
+
+	@Value("${alfresco.compression.maxRatio:0.9}")
+	double maxRatio;
+
+	@Value("${alfresco.compression.textSampleInterval:16}")
+	int textSampleInterval;
+
+	@Value("${alfresco.compression.maxTrackedTypes:100}")
+	int maxTrackedTypes;
+
+	@Value("${alfresco.compression.incompressibleTypes:application/zip,application/java-archive,application/x-java-archive,application/gzip,application/x-gzip,application/x-tar,application/x-7z-compressed,application/x-rar-compressed,application/x-bzip2,application/x-xz,image/,video/,audio/}")
+	String[] incompressibleTypes;
+
+	@Value("${alfresco.compression.textTypes:text/,application/json,application/xml,application/javascript,application/x-sh,application/sql,application/csv}")
+	String[] textTypes;
+
+	private Set<String> incompressible = new HashSet<String>();
+	private List<String> incompressiblePrefixes = new ArrayList<String>();
+	private Set<String> text = new HashSet<String>();
+	private List<String> textPrefixes = new ArrayList<String>();
+
+	private ConcurrentHashMap<String, Stats> statsByMimeType = new ConcurrentHashMap<String, Stats>();
+	private ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	@PostConstruct
+	public void init() {
+		split(incompressibleTypes, incompressible, incompressiblePrefixes);
+		split(textTypes, text, textPrefixes);
+	}
+
+	/**
+	 * The outcome of {@link CompressionAdvisor#decide}. The stream must be used in place of the
+	 * original stream, it still holds the bytes read for the sample.
+	 */
+	public static class Decision {
+		private final boolean compress;
+		private final InputStream stream;
+
+		Decision(boolean compress, InputStream stream) {
+			this.compress = compress;
+			this.stream = stream;
+		}
+
+		public boolean isCompress() {
+			return compress;
+		}
+
+		public InputStream getStream() {
+			return stream;
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Decide whether an upload should be compressed.
+	 * @param mimeType	The MIME type of the content, may be null.
+	 * @param size		The size of the content in bytes.
+	 * @param content	The content stream, it is only read up to the sample size.
+	 * @return			The decision and the stream to upload from.
+	 * @throws IOException
+	 */
+	public Decision decide(String mimeType, long size, InputStream content) throws IOException {
+		String type = normalize(mimeType);
+		Stats stats = stats(type);
+		stats.uploads.incrementAndGet();
+		stats.bytes.addAndGet(size);
+
+		if (!enabled || size < minSize || isIncompressible(type)) {
+			return new Decision(false, content);
+		}
+		if (isText(type)) {
+			// Decided by the type, a sample would not change it and is only taken now and then for the metrics
+			stats.compressed.incrementAndGet();
+			long textUploads = stats.textUploads.getAndIncrement();
+			if (textSampleInterval <= 0 || textUploads % textSampleInterval != 0) {
+				return new Decision(true, content);
+			}
+			BufferedInputStream buffered = new BufferedInputStream(content, sampleSize);
+			sampleRatio(buffered, size, stats);
+			return new Decision(true, buffered);
+		}
+
+		BufferedInputStream buffered = new BufferedInputStream(content, sampleSize);
+		boolean compress = sampleRatio(buffered, size, stats) <= maxRatio;
+		if (compress) {
+			stats.compressed.incrementAndGet();
+		}
+		return new Decision(compress, buffered);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		for (Map.Entry<String, Stats> entry : statsByMimeType.entrySet()) {
+			String prefix = METRIC_PREFIX + entry.getKey().replaceAll("[^A-Za-z0-9]", "_") + ".";
+			Stats stats = entry.getValue();
+			metrics.add(new Metric<Long>(prefix + "uploads", stats.uploads.get()));
+			metrics.add(new Metric<Long>(prefix + "compressed", stats.compressed.get()));
+			metrics.add(new Metric<Long>(prefix + "bytes", stats.bytes.get()));
+			long sampled = stats.sampledBytes.get();
+			if (sampled > 0) {
+				metrics.add(new Metric<Long>(prefix + "sampledBytes", sampled));
+				metrics.add(new Metric<Double>(prefix + "ratio", (double) stats.sampledCompressedBytes.get() / sampled));
+				metrics.add(new Metric<Double>(prefix + "cpuNanosPerByte", (double) stats.sampledCpuNanos.get() / sampled));
+			}
+		}
+		return metrics;
+	}
+
+	/*
+	 * Read the head of the content and put it back, the stream still holds every byte afterwards.
+	 */
+	private double sampleRatio(BufferedInputStream buffered, long size, Stats stats) throws IOException {
+		buffered.mark(sampleSize);
+		byte[] sample = new byte[(int) Math.min(sampleSize, size)];
+		int read = 0;
+		int count;
+		while (read < sample.length && (count = buffered.read(sample, read, sample.length - read)) > 0) {
+			read += count;
+		}
+		buffered.reset();
+		return sampleRatio(sample, read, stats);
+	}
+
+	private double sampleRatio(byte[] sample, int length, Stats stats) {
+		if (length == 0) {
+			return 1.0;
+		}
+		long cpuStart = threadBean.getCurrentThreadCpuTime();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		long compressedLength = 0;
+		try {
+			deflater.setInput(sample, 0, length);
+			deflater.finish();
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				compressedLength += deflater.deflate(buffer);
+			}
+		} finally {
+			deflater.end();
+		}
+		stats.sampledCpuNanos.addAndGet(threadBean.getCurrentThreadCpuTime() - cpuStart);
+		stats.sampledBytes.addAndGet(length);
+		stats.sampledCompressedBytes.addAndGet(compressedLength);
+		return (double) compressedLength / length;
+	}
+
+	private boolean isIncompressible(String type) {
+		return matches(type, incompressible, incompressiblePrefixes);
+	}
+
+	private boolean isText(String type) {
+		return matches(type, text, textPrefixes) || type.endsWith("+xml") || type.endsWith("+json");
+	}
+
+	private void split(String[] types, Set<String> exact, List<String> prefixes) {
+		for (String type : Arrays.asList(types)) {
+			String value = normalize(type);
+			if (value.endsWith("/")) {
+				prefixes.add(value);
+			} else {
+				exact.add(value);
+			}
+		}
+	}
+
+	private boolean matches(String type, Set<String> exact, List<String> prefixes) {
+		if (exact.contains(type)) {
+			return true;
+		}
+		for (String prefix : prefixes) {
+			if (type.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String normalize(String mimeType) {
+		if (mimeType == null) {
+			return "application/octet-stream";
+		}
+		int parameters = mimeType.indexOf(';');
+		String type = parameters < 0 ? mimeType : mimeType.substring(0, parameters);
+		return type.trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	private Stats stats(String type) {
+		Stats stats = statsByMimeType.get(type);
+		if (stats != null) {
+			return stats;
+		}
+		// Client supplied, only well formed types up to the limit get their own entry
+		if (statsByMimeType.size() >= maxTrackedTypes || !type.matches("[a-z0-9][a-z0-9!#$&^_.+-]*/[a-z0-9][a-z0-9!#$&^_.+-]*")) {
+			type = OTHER_TYPES;
+		}
+		return statsByMimeType.computeIfAbsent(type, key -> new Stats());
+	}
+
+	private static class Stats {
+		final AtomicLong uploads = new AtomicLong();
+		final AtomicLong textUploads = new AtomicLong();
+		final AtomicLong compressed = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicLong sampledBytes = new AtomicLong();
+		final AtomicLong sampledCompressedBytes = new AtomicLong();
+		final AtomicLong sampledCpuNanos = new AtomicLong();
+	}
+}
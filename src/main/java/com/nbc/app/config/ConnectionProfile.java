@@ -0,0 +1,136 @@
+package com.nbc.app.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A named set of connection settings for one Alfresco repository and service account.
+ * Every profile gets its own CMIS session (and with it its own OpenCMIS caches) and
+ * its own limit of concurrent requests, see {@link ConnectionRouter}.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+public class ConnectionProfile {
+
+	private String name;
+	private String url;
+	private String userName;
+	private String password;
+	private String repositoryId;
+	private String bindingType = "atompub";
+	private Map<String, String> parameters = new LinkedHashMap<String, String>();
+	private int maxConcurrentRequests = 20;
+	private long acquireTimeoutMillis = 30000;
+	private boolean required;
+
+	public ConnectionProfile() {
+
+	}
+
+	public ConnectionProfile(String name, String url, String userName, String password) {
+		this.name = name;
+		this.url = url;
+		this.userName = userName;
+		this.password = password;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public void setUserName(String userName) {
+		this.userName = userName;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	/**
+	 * The id of the repository to open. When empty the first repository returned by the server is used.
+	 */
+	public String getRepositoryId() {
+		return repositoryId;
+	}
+
+	public void setRepositoryId(String repositoryId) {
+		this.repositoryId = repositoryId;
+	}
+
+	/**
+	 * The CMIS binding to use, "atompub" or "local" (an in-process CMIS server, used for load tests).
+	 */
+	public String getBindingType() {
+		return bindingType;
+	}
+
+	public void setBindingType(String bindingType) {
+		this.bindingType = bindingType;
+	}
+
+	/**
+	 * Additional OpenCMIS session parameters, i.e. the factory class of a local binding.
+	 */
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(Map<String, String> parameters) {
+		this.parameters = parameters;
+	}
+
+	/**
+	 * The maximum number of requests that may talk to this repository at the same time, 0 for no limit.
+	 */
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	/**
+	 * How long a request waits for a free slot on this profile before it is rejected.
+	 */
+	public long getAcquireTimeoutMillis() {
+		return acquireTimeoutMillis;
+	}
+
+	public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+
+	/**
+	 * Whether the service is only ready once this profile is warmed up, see {@link AlfrescoWarmup}.
+	 * The default profile is always required.
+	 */
+	public boolean isRequired() {
+		return required;
+	}
+
+	public void setRequired(boolean required) {
+		this.required = required;
+	}
+}
@@ -0,0 +1,38 @@
+package com.nbc.app.config;
+
+/**
+ * Maps a tenant or a folder path prefix to a named {@link ConnectionProfile}.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+public class ConnectionRoute {
+
+	private String tenant;
+	private String pathPrefix;
+	private String profile;
+
+	public String getTenant() {
+		return tenant;
+	}
+
+	public void setTenant(String tenant) {
+		this.tenant = tenant;
+	}
+
+	public String getPathPrefix() {
+		return pathPrefix;
+	}
+
+	public void setPathPrefix(String pathPrefix) {
+		this.pathPrefix = pathPrefix;
+	}
+
+	public String getProfile() {
+		return profile;
+	}
+
+	public void setProfile(String profile) {
+		this.profile = profile;
+	}
+}
@@ -0,0 +1,183 @@
+package com.nbc.app.config;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves the connection profile a request should use and limits the number of concurrent
+ * requests per profile, so one slow repository can not starve the others.
+ *
+ * A tenant route wins over a path route, path routes are matched on the longest prefix and
+ * everything else goes to the default profile.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+public class ConnectionRouter {
+
+	public static final String DEFAULT_PROFILE = "default";
+
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionRouter.class);
+
+	@Autowired
+	AlfrescoConnectionProperties properties;
+
+	private Map<String, ConnectionProfile> profiles = new LinkedHashMap<String, ConnectionProfile>();
+	private ConnectionProfile defaultProfile;
+	private List<ConnectionRoute> pathRoutes = new ArrayList<ConnectionRoute>();
+	private Map<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+	@PostConstruct
+	public void init() {
+		String defaultName = properties.getConnectionName();
+		if (defaultName == null || defaultName.trim().isEmpty()) {
+			defaultName = DEFAULT_PROFILE;
+		}
+		defaultProfile = new ConnectionProfile(defaultName, properties.getUrl(), properties.getUserName(),
+				properties.getPassword());
+		defaultProfile.setMaxConcurrentRequests(properties.getMaxConcurrentRequests());
+		defaultProfile.setAcquireTimeoutMillis(properties.getAcquireTimeoutMillis());
+		defaultProfile.setBindingType(properties.getBindingType());
+		defaultProfile.setParameters(properties.getParameters());
+		defaultProfile.setRequired(true);
+		profiles.put(defaultName, defaultProfile);
+
+		for (Map.Entry<String, ConnectionProfile> entry : properties.getProfiles().entrySet()) {
+			if (entry.getKey().equals(defaultName)) {
+				// It would silently replace the default connection
+				throw new IllegalArgumentException("Connection profile " + entry.getKey()
+						+ " has the name of the default connection, rename the profile or alfresco.connectionName");
+			}
+			ConnectionProfile profile = entry.getValue();
+			profile.setName(entry.getKey());
+			profiles.put(entry.getKey(), profile);
+		}
+
+		for (ConnectionRoute route : properties.getRoutes()) {
+			if (!profiles.containsKey(route.getProfile())) {
+				throw new IllegalArgumentException("Route points at unknown connection profile: " + route.getProfile());
+			}
+			if (route.getPathPrefix() != null && !route.getPathPrefix().isEmpty()) {
+				pathRoutes.add(route);
+			}
+		}
+		// Longest prefix first, so the most specific route wins
+		Collections.sort(pathRoutes, (a, b) -> b.getPathPrefix().length() - a.getPathPrefix().length());
+
+		for (ConnectionProfile profile : profiles.values()) {
+			if (profile.getMaxConcurrentRequests() > 0) {
+				permits.put(profile.getName(), new Semaphore(profile.getMaxConcurrentRequests(), true));
+			}
+		}
+		logger.info("event=routing.loaded profiles={} routes={}", profiles.size(), properties.getRoutes().size());
+	}
+
+	/**
+	 * Find the profile for a request.
+	 * @param tenant		The tenant of the request, may be null.
+	 * @param folderPath	The folder path the request works on, may be null.
+	 * @return				The matching profile or the default profile.
+	 */
+	public ConnectionProfile resolve(String tenant, String folderPath) {
+		if (tenant != null && !tenant.isEmpty()) {
+			for (ConnectionRoute route : properties.getRoutes()) {
+				if (tenant.equals(route.getTenant())) {
+					return profiles.get(route.getProfile());
+				}
+			}
+		}
+		if (folderPath != null) {
+			for (ConnectionRoute route : pathRoutes) {
+				if (matchesPrefix(folderPath, route.getPathPrefix())) {
+					return profiles.get(route.getProfile());
+				}
+			}
+		}
+		return defaultProfile;
+	}
+
+	public ConnectionProfile getDefaultProfile() {
+		return defaultProfile;
+	}
+
+	public Collection<ConnectionProfile> getProfiles() {
+		return Collections.unmodifiableCollection(profiles.values());
+	}
+
+	/**
+	 * Wait for a free slot on the profile. Every successful call must be paired with {@link #release}.
+	 * @param profile	The profile the request is going to use.
+	 */
+	public void acquire(ConnectionProfile profile) {
+		Semaphore semaphore = permits.get(profile.getName());
+		if (semaphore == null) {
+			return;
+		}
+		try {
+			if (!semaphore.tryAcquire(profile.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+				throw new CmisConnectionException("All " + profile.getMaxConcurrentRequests()
+						+ " connections of profile " + profile.getName() + " are busy");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CmisConnectionException("Interrupted while waiting for connection profile " + profile.getName());
+		}
+	}
+
+	public void release(ConnectionProfile profile) {
+		Semaphore semaphore = permits.get(profile.getName());
+		if (semaphore != null) {
+			semaphore.release();
+		}
+	}
+
+	/**
+	 * Keep an acquired slot until a stream is closed, for content that is read after the request that
+	 * opened it has returned.
+	 * @param profile	The profile the slot was acquired on.
+	 * @param content	The repository stream.
+	 * @return			The stream, releasing the slot once when it is closed.
+	 */
+	public InputStream releaseOnClose(ConnectionProfile profile, InputStream content) {
+		AtomicBoolean released = new AtomicBoolean();
+		return new FilterInputStream(content) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					if (released.compareAndSet(false, true)) {
+						release(profile);
+					}
+				}
+			}
+		};
+	}
+
+	private boolean matchesPrefix(String folderPath, String prefix) {
+		if (!folderPath.startsWith(prefix)) {
+			return false;
+		}
+		return prefix.endsWith("/") || folderPath.length() == prefix.length() || folderPath.charAt(prefix.length()) == '/';
+	}
+}
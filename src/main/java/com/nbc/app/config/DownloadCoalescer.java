@@ -0,0 +1,364 @@
+package com.nbc.app.config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single flight downloads: concurrent readers of the same content share one repository read.
+ *
+ * The first reader of a key opens the repository stream, a background thread spools it to a file
+ * in a directory of this instance, created under alfresco.downloads.spoolDir at startup and deleted
+ * at shutdown, and every reader, including the ones that join later, reads
+ * the file at its own pace, waiting where it catches up with the download. The file is deleted
+ * when the last reader closes its stream, the next request for the key starts a new download.
+ *
+ * The spool is bounded by alfresco.downloads.maxSpoolBytes. A reader always joins a running
+ * download of its key, only a new download has to fit; content of unknown length or content that
+ * does not fit is streamed straight from the repository without coalescing.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+public class DownloadCoalescer implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(DownloadCoalescer.class);
+
+	private static final String METRIC_PREFIX = "alfresco.downloads.";
+	private static final int CHUNK_SIZE = 65536;
+
+	@Value("${alfresco.downloads.spoolDir:${java.io.tmpdir}}")
+	String spoolDir;
+
+	@Value("${alfresco.downloads.maxSpoolBytes:1073741824}")
+	long maxSpoolBytes;
+
+	private File directory;
+	private ExecutorService pumps;
+
+	private final Map<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+	private final AtomicLong spooledBytes = new AtomicLong();
+
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong joined = new AtomicLong();
+	private final AtomicLong bypassed = new AtomicLong();
+	private final AtomicLong upstreamBytes = new AtomicLong();
+
+	/**
+	 * Opens the repository stream, only called for the first reader of a flight.
+	 */
+	public interface Upstream {
+		InputStream open() throws IOException;
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		File parent = new File(spoolDir);
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create download spool directory " + parent);
+		}
+		// Private to this instance, other instances on the host never see or delete its files
+		directory = Files.createTempDirectory(parent.toPath(), "alfresco-downloads-").toFile();
+		AtomicInteger threadCount = new AtomicInteger();
+		pumps = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "download-pump-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		pumps.shutdownNow();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		if (!directory.delete()) {
+			logger.warn("Could not delete download spool directory {}", directory);
+		}
+	}
+
+	/**
+	 * Open a stream on content, joining a download of the same key that is already running.
+	 * @param key		Identifies the content as the account sees it, i.e. profile, repository and version.
+	 * @param length	The content length, -1 if unknown.
+	 * @param upstream	Opens the repository stream if no download of the key is running.
+	 * @return			The content stream, the caller must close it.
+	 * @throws IOException
+	 */
+	public InputStream open(String key, long length, Upstream upstream) throws IOException {
+		while (true) {
+			Flight flight = flights.get(key);
+			if (flight != null) {
+				InputStream reader = flight.join();
+				if (reader != null) {
+					joined.incrementAndGet();
+					return reader;
+				}
+				// The flight was finishing, try again
+				continue;
+			}
+			if (length < 0 || !reserve(length)) {
+				bypassed.incrementAndGet();
+				return upstream.open();
+			}
+			Flight created;
+			try {
+				created = new Flight(key, length, File.createTempFile("download", ".spool", directory));
+			} catch (IOException | RuntimeException e) {
+				spooledBytes.addAndGet(-length);
+				throw e;
+			}
+			if (flights.putIfAbsent(key, created) == null) {
+				// The reservation moves to the new flight
+				return start(created, upstream);
+			}
+			// Another reader started the key meanwhile, join that one
+			created.file.delete();
+			spooledBytes.addAndGet(-length);
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "started", started.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "joined", joined.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "bypassed", bypassed.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "upstreamBytes", upstreamBytes.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "spooledBytes", spooledBytes.get()));
+		metrics.add(new Metric<Integer>(METRIC_PREFIX + "active", flights.size()));
+		return metrics;
+	}
+
+	private boolean reserve(long length) {
+		long current;
+		do {
+			current = spooledBytes.get();
+			if (current + length > maxSpoolBytes) {
+				return false;
+			}
+		} while (!spooledBytes.compareAndSet(current, current + length));
+		return true;
+	}
+
+	/*
+	 * Open the repository stream for a flight that is already visible, readers that join meanwhile
+	 * wait for the first bytes or the failure.
+	 */
+	private InputStream start(Flight flight, Upstream upstream) throws IOException {
+		OutputStream spool = null;
+		InputStream content;
+		try {
+			spool = new FileOutputStream(flight.file);
+			content = upstream.open();
+		} catch (IOException | RuntimeException e) {
+			if (spool != null) {
+				try {
+					spool.close();
+				} catch (IOException ce) {
+					e.addSuppressed(ce);
+				}
+			}
+			flight.fail(e);
+			throw e;
+		}
+		InputStream reader = flight.join();
+		started.incrementAndGet();
+		OutputStream out = spool;
+		pumps.execute(() -> flight.pump(content, out));
+		return reader;
+	}
+
+	/*
+	 * One download, spooled to a file and read by any number of readers.
+	 */
+	private class Flight {
+		final String key;
+		final long length;
+		final File file;
+		long written;
+		boolean done;
+		Exception failure;
+		int readers;
+		boolean closed;
+
+		Flight(String key, long length, File file) {
+			this.key = key;
+			this.length = length;
+			this.file = file;
+		}
+
+		synchronized InputStream join() throws IOException {
+			if (closed) {
+				return null;
+			}
+			if (failure != null) {
+				throw new IOException("Download of " + key + " failed", failure);
+			}
+			readers++;
+			return new Reader(this, new RandomAccessFile(file, "r"));
+		}
+
+		void pump(InputStream content, OutputStream spool) {
+			byte[] buffer = new byte[CHUNK_SIZE];
+			try (InputStream in = content; OutputStream out = spool) {
+				int count;
+				while ((count = in.read(buffer)) != -1) {
+					out.write(buffer, 0, count);
+					out.flush();
+					upstreamBytes.addAndGet(count);
+					synchronized (this) {
+						if (readers == 0) {
+							// Every reader went away, nobody is waiting for the rest
+							throw new IOException("All readers closed");
+						}
+						written += count;
+						notifyAll();
+					}
+				}
+				synchronized (this) {
+					done = true;
+					notifyAll();
+					if (readers == 0) {
+						flights.remove(key, this);
+						release();
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				logger.warn("event=download.failed key={} error={}", key, e.getMessage());
+				fail(e);
+			}
+		}
+
+		synchronized void fail(Exception e) {
+			if (done) {
+				return;
+			}
+			failure = e;
+			notifyAll();
+			flights.remove(key, this);
+			if (readers == 0) {
+				release();
+			}
+		}
+
+		synchronized void leave() {
+			readers--;
+			if (readers == 0 && (done || failure != null)) {
+				flights.remove(key, this);
+				release();
+			}
+		}
+
+		/*
+		 * Called under the lock once the last reader is gone and the download ended.
+		 */
+		private void release() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			spooledBytes.addAndGet(-length);
+			if (!file.delete()) {
+				logger.warn("Could not delete download spool file {}", file);
+			}
+		}
+
+		/*
+		 * Blocks until data past the position is available. Returns the readable byte count, -1 at the end.
+		 */
+		synchronized long available(long position) throws IOException {
+			while (position >= written && !done && failure == null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for download of " + key);
+				}
+			}
+			if (position < written) {
+				return written - position;
+			}
+			if (failure != null) {
+				throw new IOException("Download of " + key + " failed", failure);
+			}
+			return -1;
+		}
+	}
+
+	private static class Reader extends InputStream {
+		private final Flight flight;
+		private final RandomAccessFile file;
+		private long position;
+		private boolean closed;
+
+		Reader(Flight flight, RandomAccessFile file) {
+			this.flight = flight;
+			this.file = file;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			long available = flight.available(position);
+			if (available < 0) {
+				return -1;
+			}
+			file.seek(position);
+			int count = file.read(b, off, (int) Math.min(len, available));
+			if (count > 0) {
+				position += count;
+			}
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				file.close();
+			} finally {
+				flight.leave();
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package com.nbc.app.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.data.AllowableActions;
+import org.apache.chemistry.opencmis.commons.enums.Action;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short lived cache of the allowable actions of folders, so a batch of uploads into one folder
+ * checks the folder permissions against the repository once instead of once per file.
+ *
+ * Allowable actions are kept per connection profile and object id as a bitset of {@link Action}
+ * ordinals, next to an index from profile and folder path to object id. A profile stands for one
+ * repository and service account, so two profiles never share entries. Entries expire after
+ * alfresco.permissions.ttlMillis, a permission change in the repository is therefore seen at the
+ * latest one TTL later. A miss or an expired entry never grants anything, the caller has to ask
+ * the repository again. A folder deleted by another instance can be reported as existing until
+ * then; the write into it fails with not found and the caller invalidates the path.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+public class PermissionCache implements PublicMetrics {
+
+	private static final String METRIC_PREFIX = "alfresco.permissions.";
+
+	static {
+		if (Action.values().length > Long.SIZE) {
+			throw new IllegalStateException("Allowable actions do not fit into a long bitset");
+		}
+	}
+
+	@Value("${alfresco.permissions.ttlMillis:30000}")
+	long ttlMillis;
+
+	@Value("${alfresco.permissions.maxEntries:10000}")
+	int maxEntries;
+
+	// profile|repository|path -> object id
+	private final Map<String, PathEntry> paths = new ConcurrentHashMap<String, PathEntry>();
+
+	// profile|repository|object id -> allowable actions
+	private final Map<String, Permissions> permissions = new ConcurrentHashMap<String, Permissions>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private static class PathEntry {
+		final String path;
+		final String objectId;
+		final long expiresAt;
+
+		PathEntry(String path, String objectId, long expiresAt) {
+			this.path = path;
+			this.objectId = objectId;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * The allowable actions of one object for the service account of one profile.
+	 */
+	public static class Permissions {
+		private final String objectId;
+		private final long actions;
+		private final long expiresAt;
+
+		Permissions(String objectId, long actions, long expiresAt) {
+			this.objectId = objectId;
+			this.actions = actions;
+			this.expiresAt = expiresAt;
+		}
+
+		public String getObjectId() {
+			return objectId;
+		}
+
+		public boolean allows(Action action) {
+			return (actions & bit(action)) != 0;
+		}
+	}
+
+	/**
+	 * Look up the cached permissions of the object at a path.
+	 * @param session	The session the check is made for, it provides the profile and repository.
+	 * @param path		The repository path of the object.
+	 * @return			The permissions or null if they are not cached or expired.
+	 */
+	public Permissions get(Session session, String path) {
+		String prefix = prefix(session);
+		long now = System.currentTimeMillis();
+		PathEntry pathEntry = paths.get(prefix + path);
+		if (pathEntry != null && pathEntry.expiresAt > now) {
+			Permissions cached = permissions.get(prefix + pathEntry.objectId);
+			if (cached != null && cached.expiresAt > now) {
+				hits.incrementAndGet();
+				return cached;
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Cache the allowable actions of an object fetched with allowable actions included.
+	 * @param session	The session the object was fetched with.
+	 * @param path		The repository path the object was fetched by.
+	 * @param object	The fetched object.
+	 * @return			The cached permissions.
+	 */
+	public Permissions put(Session session, String path, CmisObject object) {
+		String prefix = prefix(session);
+		long expiresAt = System.currentTimeMillis() + ttlMillis;
+		Permissions entry = new Permissions(object.getId(), bits(object.getAllowableActions()), expiresAt);
+		if (paths.size() >= maxEntries || permissions.size() >= maxEntries) {
+			evictExpired();
+		}
+		paths.put(prefix + path, new PathEntry(path, object.getId(), expiresAt));
+		permissions.put(prefix + object.getId(), entry);
+		return entry;
+	}
+
+	/**
+	 * Forget the path and everything below it, for all profiles. Called when a folder is
+	 * deleted, renamed or found to be missing.
+	 * @param path	The repository path of the object.
+	 */
+	public void invalidate(String path) {
+		String children = path.endsWith("/") ? path : path + "/";
+		Iterator<PathEntry> entries = paths.values().iterator();
+		while (entries.hasNext()) {
+			PathEntry entry = entries.next();
+			if (entry.path.equals(path) || entry.path.startsWith(children)) {
+				entries.remove();
+			}
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "hits", hits.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "misses", misses.get()));
+		metrics.add(new Metric<Integer>(METRIC_PREFIX + "entries", permissions.size()));
+		return metrics;
+	}
+
+	private void evictExpired() {
+		long now = System.currentTimeMillis();
+		paths.values().removeIf(entry -> entry.expiresAt <= now);
+		permissions.values().removeIf(entry -> entry.expiresAt <= now);
+		// Still full of live entries, start over rather than grow without bound
+		if (paths.size() >= maxEntries || permissions.size() >= maxEntries) {
+			paths.clear();
+			permissions.clear();
+		}
+	}
+
+	private String prefix(Session session) {
+		Map<String, String> parameters = session.getSessionParameters();
+		String profile = parameters.get(AlfrescoClient.PROFILE_PARAMETER);
+		// Sessions not opened through a profile fall back to the user
+		return (profile != null ? profile : "user:" + parameters.get(SessionParameter.USER)) + "|"
+				+ session.getRepositoryInfo().getId() + "|";
+	}
+
+	private static long bits(AllowableActions allowableActions) {
+		long bits = 0;
+		// No allowable actions returned means nothing is allowed
+		if (allowableActions != null && allowableActions.getAllowableActions() != null) {
+			Set<Action> actions = allowableActions.getAllowableActions();
+			for (Action action : actions) {
+				bits |= bit(action);
+			}
+		}
+		return bits;
+	}
+
+	private static long bit(Action action) {
+		return 1L << action.ordinal();
+	}
+}
@@ -0,0 +1,192 @@
+package com.nbc.app.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Size bounded, least recently used cache of rendition bytes on local disk.
+ *
+ * Entries are keyed by object id, change token and rendition kind, so a new version or a
+ * content change of a document never hits an old entry; stale entries simply age out.
+ * Only the index is kept on the heap, the bytes live in files in a directory of this instance,
+ * created under alfresco.renditions.cacheDir at startup and deleted at shutdown, so instances
+ * sharing a host or overlapping during a restart never touch each other's files.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+public class RenditionCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(RenditionCache.class);
+
+	@Value("${alfresco.renditions.cacheDir:${java.io.tmpdir}}")
+	String cacheDir;
+
+	@Value("${alfresco.renditions.maxBytes:268435456}")
+	long maxBytes;
+
+	private File directory;
+	private long totalBytes;
+
+	// Access ordered, the first entry is the least recently used one
+	private final LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+	private static class Entry {
+		final File file;
+		final long size;
+		final String mimeType;
+
+		Entry(File file, long size, String mimeType) {
+			this.file = file;
+			this.size = size;
+			this.mimeType = mimeType;
+		}
+	}
+
+	/**
+	 * A cached rendition opened for reading. The caller must close the stream.
+	 */
+	public static class CachedRendition {
+		private final InputStream stream;
+		private final long length;
+		private final String mimeType;
+
+		CachedRendition(InputStream stream, long length, String mimeType) {
+			this.stream = stream;
+			this.length = length;
+			this.mimeType = mimeType;
+		}
+
+		public InputStream getStream() {
+			return stream;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		public String getMimeType() {
+			return mimeType;
+		}
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		File parent = new File(cacheDir);
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create rendition cache directory " + parent);
+		}
+		// The index is not persisted, every instance starts with an empty directory of its own
+		directory = Files.createTempDirectory(parent.toPath(), "alfresco-renditions-").toFile();
+	}
+
+	@PreDestroy
+	public synchronized void destroy() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		if (!directory.delete()) {
+			logger.warn("Could not delete rendition cache directory {}", directory);
+		}
+		index.clear();
+		totalBytes = 0;
+	}
+
+	/**
+	 * Build the cache key of a rendition. The key is also used as the ETag towards HTTP clients.
+	 */
+	public String key(String objectId, String changeToken, String kind) {
+		return DigestUtils.sha1Hex((objectId + "|" + changeToken + "|" + kind).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Open a cached rendition.
+	 * @param key	The key built with {@link #key}.
+	 * @return		The opened rendition or null if it is not cached.
+	 */
+	public synchronized CachedRendition open(String key) {
+		Entry entry = index.get(key);
+		if (entry == null) {
+			return null;
+		}
+		try {
+			// Opened under the lock, an eviction afterwards does not affect the open stream
+			return new CachedRendition(new FileInputStream(entry.file), entry.size, entry.mimeType);
+		} catch (FileNotFoundException e) {
+			index.remove(key);
+			totalBytes -= entry.size;
+			return null;
+		}
+	}
+
+	/**
+	 * Store a rendition and open it for reading. The content is copied to disk outside the lock.
+	 * @param key		The key built with {@link #key}.
+	 * @param mimeType	The MIME type of the rendition.
+	 * @param content	The rendition content, it is consumed and closed.
+	 * @return			The stored rendition, opened for reading.
+	 * @throws IOException
+	 */
+	public CachedRendition put(String key, String mimeType, InputStream content) throws IOException {
+		File temp = File.createTempFile(key, ".part", directory);
+		long size;
+		try (InputStream in = content) {
+			size = Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		File file = new File(directory, key);
+		synchronized (this) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Entry previous = index.put(key, new Entry(file, size, mimeType));
+			if (previous != null) {
+				totalBytes -= previous.size;
+			}
+			totalBytes += size;
+			evict(key);
+			return open(key);
+		}
+	}
+
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	private void evict(String keep) {
+		Iterator<Map.Entry<String, Entry>> entries = index.entrySet().iterator();
+		while (totalBytes > maxBytes && entries.hasNext()) {
+			Map.Entry<String, Entry> eldest = entries.next();
+			if (eldest.getKey().equals(keep)) {
+				continue;
+			}
+			entries.remove();
+			totalBytes -= eldest.getValue().size;
+			if (!eldest.getValue().file.delete()) {
+				logger.warn("Could not delete evicted rendition {}", eldest.getValue().file);
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.nbc.app.config;
+
+import org.apache.chemistry.opencmis.commons.data.RepositoryCapabilities;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityContentStreamUpdates;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityQuery;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityRenditions;
+
+/**
+ * Immutable copy of the repository info and capabilities the client needs on its write paths.
+ * It is taken once per session, so the write paths neither go through the session lock nor walk
+ * the repository info object on every call.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+public final class RepositoryCapabilitiesSnapshot {
+
+	private final String repositoryId;
+	private final String productName;
+	private final String productVersion;
+	private final boolean contentStreamUpdatableAnytime;
+	private final boolean unfilingSupported;
+	private final boolean bulkUpdateSupported;
+	private final CapabilityQuery queryCapability;
+	private final CapabilityRenditions renditionsCapability;
+	private final String description;
+
+	public RepositoryCapabilitiesSnapshot(RepositoryInfo repositoryInfo) {
+		RepositoryCapabilities capabilities = repositoryInfo.getCapabilities();
+		this.repositoryId = repositoryInfo.getId();
+		this.productName = repositoryInfo.getProductName();
+		this.productVersion = repositoryInfo.getProductVersion();
+		this.contentStreamUpdatableAnytime = capabilities.getContentStreamUpdatesCapability() == CapabilityContentStreamUpdates.ANYTIME;
+		this.unfilingSupported = Boolean.TRUE.equals(capabilities.isUnfilingSupported());
+		this.bulkUpdateSupported = repositoryInfo.getCmisVersion() != null
+				&& !"1.0".equals(repositoryInfo.getCmisVersion().value());
+		this.queryCapability = capabilities.getQueryCapability();
+		this.renditionsCapability = capabilities.getRenditionsCapability();
+		this.description = "[repoName=" + productName + "][repoVersion=" + productVersion + "]";
+	}
+
+	public String getRepositoryId() {
+		return repositoryId;
+	}
+
+	public String getProductName() {
+		return productName;
+	}
+
+	public String getProductVersion() {
+		return productVersion;
+	}
+
+	public boolean isContentStreamUpdatableAnytime() {
+		return contentStreamUpdatableAnytime;
+	}
+
+	public boolean isUnfilingSupported() {
+		return unfilingSupported;
+	}
+
+	/**
+	 * Bulk updates were introduced with CMIS 1.1.
+	 */
+	public boolean isBulkUpdateSupported() {
+		return bulkUpdateSupported;
+	}
+
+	public CapabilityQuery getQueryCapability() {
+		return queryCapability;
+	}
+
+	public CapabilityRenditions getRenditionsCapability() {
+		return renditionsCapability;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
@@ -0,0 +1,373 @@
+package com.nbc.app.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.enums.UnfileObject;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deletes expired ticket folders in the background, one rate limited batch per policy every
+ * alfresco.retention.intervalMillis, and only inside the off-peak window (i.e. "01:00-05:00",
+ * local time, may wrap past midnight, empty for always). The engine runs on its own thread, its
+ * pauses between deletes never hold up other scheduled tasks.
+ *
+ * Expired folders are found oldest first by creation date. The creation date of the last folder
+ * handled, with the ids of the folders handled at that moment, is checkpointed per policy, so a
+ * restart resumes where the engine stopped and folders that could not be deleted do not block the
+ * ones after them. The checkpoint is kept in alfresco.retention.checkpointProperty on the policy
+ * folder or, without one, in alfresco.retention.checkpointFile, which must be on persistent storage.
+ * Once a pass over a policy finds nothing left the checkpoint is cleared and the next pass retries
+ * from the oldest folder, as does a checkpoint that can not be read.
+ *
+ * Only one instance may delete: the engine runs on the instance with CF_INSTANCE_INDEX 0, or the
+ * only instance outside Cloud Foundry.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+public class RetentionEngine implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(RetentionEngine.class);
+
+	private static final String METRIC_PREFIX = "alfresco.retention.";
+
+	@Autowired
+	RetentionProperties properties;
+
+	@Autowired
+	AlfrescoClient alfrescoClient;
+
+	@Autowired
+	ConnectionRouter connectionRouter;
+
+	@Value("${CF_INSTANCE_INDEX:0}")
+	int instanceIndex;
+
+	private ScheduledExecutorService scheduler;
+	private String checkpointProperty;
+	private LocalTime windowStart;
+	private LocalTime windowEnd;
+	private final Properties checkpoints = new Properties();
+
+	private final AtomicLong scanned = new AtomicLong();
+	private final AtomicLong deleted = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong passes = new AtomicLong();
+	private final AtomicLong lastRun = new AtomicLong();
+
+	@PostConstruct
+	public void init() throws IOException {
+		String window = properties.getWindow();
+		if (window != null && !window.trim().isEmpty()) {
+			String[] bounds = window.trim().split("-");
+			if (bounds.length != 2) {
+				throw new IllegalArgumentException("alfresco.retention.window must look like 01:00-05:00: " + window);
+			}
+			windowStart = LocalTime.parse(bounds[0].trim());
+			windowEnd = LocalTime.parse(bounds[1].trim());
+		}
+		for (RetentionPolicy policy : properties.getPolicies()) {
+			if (policy.getPath() == null || policy.getMaxAgeDays() <= 0) {
+				throw new IllegalArgumentException("A retention policy needs a path and a positive maxAgeDays");
+			}
+		}
+		if (!properties.isEnabled()) {
+			return;
+		}
+		checkpointProperty = blankToNull(properties.getCheckpointProperty());
+		if (checkpointProperty == null) {
+			if (blankToNull(properties.getCheckpointFile()) == null) {
+				// A default in the temp directory would be lost on every restage and restart the passes
+				throw new IllegalArgumentException("alfresco.retention needs a checkpointProperty or a checkpointFile"
+						+ " on persistent storage");
+			}
+			File file = new File(properties.getCheckpointFile());
+			if (file.isFile()) {
+				try (InputStream in = new FileInputStream(file)) {
+					checkpoints.load(in);
+				}
+			}
+		}
+		if (instanceIndex != 0) {
+			logger.info("Retention runs on instance 0 only, this is instance {}", instanceIndex);
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "retention");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::run, properties.getIntervalMillis(), properties.getIntervalMillis(),
+				TimeUnit.MILLISECONDS);
+		logger.info("Retention enabled for {} polic(ies), window [{}], {} deletes/minute{}", properties.getPolicies().size(),
+				window, properties.getDeletesPerMinute(), properties.isDryRun() ? ", dry run" : "");
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * One batch per policy, called by the engine's own scheduler.
+	 */
+	public void run() {
+		if (!inWindow(LocalTime.now())) {
+			return;
+		}
+		lastRun.set(System.currentTimeMillis());
+		for (RetentionPolicy policy : properties.getPolicies()) {
+			try {
+				runBatch(policy);
+			} catch (RuntimeException e) {
+				// Caught per policy, an exception escaping the run would cancel the schedule
+				logger.error("event=retention.failed path={} error={}", policy.getPath(), e.getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "scanned", scanned.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "deleted", deleted.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "failed", failed.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "passes", passes.get()));
+		metrics.add(new Metric<Long>(METRIC_PREFIX + "lastRun", lastRun.get()));
+		return metrics;
+	}
+
+	private void runBatch(RetentionPolicy policy) throws InterruptedException {
+		ConnectionProfile profile = connectionRouter.resolve(policy.getTenant(), policy.getPath());
+		Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(policy.getMaxAgeDays()));
+
+		Checkpoint checkpoint;
+		List<CmisObject> expired = new ArrayList<CmisObject>();
+		connectionRouter.acquire(profile);
+		try {
+			Session session = alfrescoClient.getSession(profile);
+			checkpoint = loadCheckpoint(session, policy);
+			Date from = checkpoint == null ? null : checkpoint.created;
+			int handled = checkpoint == null ? 0 : checkpoint.ids.size();
+			// The checkpoint moment is included, folders created in the same millisecond as the last one
+			// handled may still be waiting; the ones already handled at that moment are left out
+			for (CmisObject folder : alfrescoClient.findFoldersCreatedBetween(session, policy.getPath(), from, cutoff,
+					properties.getBatchSize() + handled)) {
+				if (checkpoint == null || !checkpoint.ids.contains(folder.getId())) {
+					expired.add(folder);
+				}
+			}
+		} finally {
+			connectionRouter.release(profile);
+		}
+		if (expired.isEmpty()) {
+			if (checkpoint != null) {
+				// Pass complete, start over from the oldest folder to retry the ones that failed
+				saveCheckpoint(profile, policy, null);
+				passes.incrementAndGet();
+				logger.info("event=retention.pass.done path={}", policy.getPath());
+			}
+			return;
+		}
+		scanned.addAndGet(expired.size());
+
+		long pauseMillis = properties.getDeletesPerMinute() > 0 ? TimeUnit.MINUTES.toMillis(1) / properties.getDeletesPerMinute() : 0;
+		for (CmisObject folder : expired) {
+			if (!inWindow(LocalTime.now())) {
+				logger.info("event=retention.window.closed path={}", policy.getPath());
+				return;
+			}
+			String path = policy.getPath().endsWith("/") ? policy.getPath() + folder.getName()
+					: policy.getPath() + "/" + folder.getName();
+			delete(profile, path, folder);
+			checkpoint = Checkpoint.after(checkpoint, folder);
+			saveCheckpoint(profile, policy, checkpoint);
+			Thread.sleep(pauseMillis);
+		}
+	}
+
+	private void delete(ConnectionProfile profile, String path, CmisObject folder) {
+		if (properties.isDryRun()) {
+			logger.info("event=retention.dryrun path={} created={}", path, folder.getCreationDate().getTime());
+			return;
+		}
+		// One connection slot per delete, the engine never holds a slot while it waits
+		connectionRouter.acquire(profile);
+		try {
+			// Unfiling would keep the documents, retention has to free the space
+			alfrescoClient.deleteFolder(alfrescoClient.getSession(profile), path, UnfileObject.DELETE);
+			deleted.incrementAndGet();
+		} catch (CmisBaseException e) {
+			failed.incrementAndGet();
+			logger.error("event=retention.delete.failed path={} error={}", path, e.getMessage());
+		} finally {
+			connectionRouter.release(profile);
+		}
+	}
+
+	boolean inWindow(LocalTime now) {
+		if (windowStart == null) {
+			return true;
+		}
+		if (windowStart.isBefore(windowEnd)) {
+			return !now.isBefore(windowStart) && now.isBefore(windowEnd);
+		}
+		// Wraps past midnight
+		return !now.isBefore(windowStart) || now.isBefore(windowEnd);
+	}
+
+	private Checkpoint loadCheckpoint(Session session, RetentionPolicy policy) {
+		String value;
+		if (checkpointProperty != null) {
+			value = alfrescoClient.getFolderProperty(session, policy.getPath(), checkpointProperty);
+		} else {
+			synchronized (checkpoints) {
+				value = checkpoints.getProperty(policy.getPath());
+			}
+		}
+		try {
+			return Checkpoint.parse(value);
+		} catch (NumberFormatException e) {
+			// Edited by hand or cut short, failing every batch on it would stop the policy for good
+			logger.warn("event=retention.checkpoint.reset path={} value={}", policy.getPath(), value);
+			if (checkpointProperty != null) {
+				writeCheckpointProperty(session, policy, null);
+			} else {
+				writeCheckpointFile(policy, null);
+			}
+			return null;
+		}
+	}
+
+	private void saveCheckpoint(ConnectionProfile profile, RetentionPolicy policy, Checkpoint checkpoint) {
+		String value = checkpoint == null ? null : checkpoint.toString();
+		if (checkpointProperty == null) {
+			writeCheckpointFile(policy, value);
+			return;
+		}
+		connectionRouter.acquire(profile);
+		try {
+			writeCheckpointProperty(alfrescoClient.getSession(profile), policy, value);
+		} finally {
+			connectionRouter.release(profile);
+		}
+	}
+
+	private void writeCheckpointProperty(Session session, RetentionPolicy policy, String value) {
+		try {
+			// Cleared with an empty value, not every repository removes a property set to null
+			alfrescoClient.setFolderProperty(session, policy.getPath(), checkpointProperty, value == null ? "" : value);
+		} catch (CmisBaseException e) {
+			// The engine keeps going, the next batch redoes the work since the last saved checkpoint
+			logger.warn("Could not save retention checkpoint on {}: {}", policy.getPath(), e.getMessage());
+		}
+	}
+
+	private void writeCheckpointFile(RetentionPolicy policy, String value) {
+		synchronized (checkpoints) {
+			if (value == null) {
+				checkpoints.remove(policy.getPath());
+			} else {
+				checkpoints.setProperty(policy.getPath(), value);
+			}
+			File file = new File(properties.getCheckpointFile());
+			try {
+				File temp = new File(file.getPath() + ".tmp");
+				try (OutputStream out = new FileOutputStream(temp)) {
+					checkpoints.store(out, "Retention checkpoints: policy path = creation date (epoch millis) of the last"
+							+ " folder handled and the ids handled at that moment");
+				}
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				// The engine keeps going, after a restart it redoes the work since the last saved checkpoint
+				logger.warn("Could not save retention checkpoint {}: {}", file, e.getMessage());
+			}
+		}
+	}
+
+	private static String blankToNull(String value) {
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	/*
+	 * Where a pass stopped: the creation date of the last folder handled and the ids of the folders
+	 * handled with that creation date, stored as "<epoch millis> <id> <id>...".
+	 */
+	static class Checkpoint {
+		final Date created;
+		final Set<String> ids;
+
+		Checkpoint(Date created, Set<String> ids) {
+			this.created = created;
+			this.ids = ids;
+		}
+
+		static Checkpoint after(Checkpoint previous, CmisObject folder) {
+			Date created = folder.getCreationDate().getTime();
+			Set<String> ids = previous != null && previous.created.equals(created) ? previous.ids : new LinkedHashSet<String>();
+			ids.add(folder.getId());
+			return new Checkpoint(created, ids);
+		}
+
+		/*
+		 * Null for no value, throws NumberFormatException for a value that is not a checkpoint.
+		 */
+		static Checkpoint parse(String value) {
+			if (value == null || value.trim().isEmpty()) {
+				return null;
+			}
+			String[] parts = value.trim().split("\\s+");
+			Set<String> ids = new LinkedHashSet<String>();
+			for (int i = 1; i < parts.length; i++) {
+				ids.add(parts[i]);
+			}
+			return new Checkpoint(new Date(Long.parseLong(parts[0])), ids);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder value = new StringBuilder().append(created.getTime());
+			for (String id : ids) {
+				value.append(' ').append(id);
+			}
+			return value.toString();
+		}
+	}
+}
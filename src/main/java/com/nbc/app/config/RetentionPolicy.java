@@ -0,0 +1,39 @@
+package com.nbc.app.config;
+
+/**
+ * Ticket folders directly under path are deleted once they are older than maxAgeDays.
+ * The tenant, if set, selects the connection profile like it does for requests.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+public class RetentionPolicy {
+
+	private String path;
+	private int maxAgeDays;
+	private String tenant;
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public int getMaxAgeDays() {
+		return maxAgeDays;
+	}
+
+	public void setMaxAgeDays(int maxAgeDays) {
+		this.maxAgeDays = maxAgeDays;
+	}
+
+	public String getTenant() {
+		return tenant;
+	}
+
+	public void setTenant(String tenant) {
+		this.tenant = tenant;
+	}
+}
@@ -0,0 +1,100 @@
+package com.nbc.app.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Binds the retention settings under "alfresco.retention", see {@link RetentionEngine}.
+ *
+ * @author Ammar
+ * @version 1.0
+ */
+@Component
+@ConfigurationProperties(prefix = "alfresco.retention")
+public class RetentionProperties {
+
+	private boolean enabled = false;
+	private boolean dryRun = false;
+	private String window = "";
+	private long intervalMillis = 300000;
+	private int batchSize = 50;
+	private int deletesPerMinute = 30;
+	private String checkpointProperty;
+	private String checkpointFile;
+	private List<RetentionPolicy> policies = new ArrayList<RetentionPolicy>();
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isDryRun() {
+		return dryRun;
+	}
+
+	public void setDryRun(boolean dryRun) {
+		this.dryRun = dryRun;
+	}
+
+	public String getWindow() {
+		return window;
+	}
+
+	public void setWindow(String window) {
+		this.window = window;
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	public void setIntervalMillis(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getDeletesPerMinute() {
+		return deletesPerMinute;
+	}
+
+	public void setDeletesPerMinute(int deletesPerMinute) {
+		this.deletesPerMinute = deletesPerMinute;
+	}
+
+	public String getCheckpointProperty() {
+		return checkpointProperty;
+	}
+
+	public void setCheckpointProperty(String checkpointProperty) {
+		this.checkpointProperty = checkpointProperty;
+	}
+
+	public String getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	public void setCheckpointFile(String checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public List<RetentionPolicy> getPolicies() {
+		return policies;
+	}
+
+	public void setPolicies(List<RetentionPolicy> policies) {
+		this.policies = policies;
+	}
+}
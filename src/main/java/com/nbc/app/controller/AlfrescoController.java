@@ -1,20 +1,44 @@
 package com.nbc.app.controller;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 import springfox.documentation.annotations.ApiIgnore;
 
+import com.nbc.app.domain.BulkUpdateRequest;
+import com.nbc.app.domain.BulkUpdateResult;
+import com.nbc.app.domain.DocumentContent;
+import com.nbc.app.domain.ManifestRequest;
+import com.nbc.app.domain.ManifestResult;
+import com.nbc.app.domain.UploadResult;
 import com.nbc.app.service.AlfrescoService;
 
 @RestController
 public class AlfrescoController {
 
 	public static final String BLANK = "";
+	public static final String UPLOAD_MODE_SKIP = "SKIP";
+	public static final String UPLOAD_MODE_VERSION = "VERSION";
+	public static final String UPLOAD_MODE_ARCHIVE = "ARCHIVE";
 
 	@Autowired
 	AlfrescoService alfrescoService;
@@ -26,15 +50,69 @@ public class AlfrescoController {
 	}
 	
 	@PostMapping(value = "/processData", consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
-	public void getGithubPayload(@RequestParam(value="ticketNumber",required=true)String ticketNumber,
+	public List<UploadResult> getGithubPayload(@RequestParam(value="ticketNumber",required=true)String ticketNumber,
 									@RequestParam(value="folderPath",required=true)String folderPath ,
-									@RequestParam(value="files",required=true) MultipartFile[]  files) {		
-		if(files.length>0) {
-			for(MultipartFile file : files) {	
-				alfrescoService.uploadFolderToAlfresco(file,ticketNumber,folderPath);
-	        }
+									@RequestParam(value="files",required=true) MultipartFile[]  files,
+									@RequestParam(value="tenant",required=false)String tenant,
+									@RequestParam(value="uploadMode",required=false,defaultValue=UPLOAD_MODE_SKIP)String uploadMode,
+									@RequestParam(value="versioning",required=false,defaultValue="MAJOR")String versioning,
+									@RequestParam(value="comment",required=false)String comment) throws IOException {		
+		if(UPLOAD_MODE_VERSION.equalsIgnoreCase(uploadMode)) {
+			if(!"MAJOR".equalsIgnoreCase(versioning) && !"MINOR".equalsIgnoreCase(versioning)) {
+				throw new IllegalArgumentException("versioning must be MAJOR or MINOR");
+			}
+			if(files.length==0) {
+				return Collections.emptyList();
+			}
+			return alfrescoService.uploadVersionsToAlfresco(files,ticketNumber,folderPath,tenant,"MAJOR".equalsIgnoreCase(versioning),comment);
+		}
+		if(UPLOAD_MODE_ARCHIVE.equalsIgnoreCase(uploadMode)) {
+			// Every file is a ZIP or TAR archive that is expanded into the ticket folder
+			List<UploadResult> results = new ArrayList<UploadResult>();
+			for(MultipartFile file : files) {
+				results.addAll(alfrescoService.uploadArchiveToAlfresco(file,ticketNumber,folderPath,tenant));
+			}
+			return results;
 		}
+		if(!UPLOAD_MODE_SKIP.equalsIgnoreCase(uploadMode)) {
+			throw new IllegalArgumentException("uploadMode must be " + UPLOAD_MODE_SKIP + ", " + UPLOAD_MODE_VERSION
+					+ " or " + UPLOAD_MODE_ARCHIVE);
+		}
+		List<UploadResult> results = new ArrayList<UploadResult>(files.length);
+		for(MultipartFile file : files) {	
+			results.add(alfrescoService.uploadFolderToAlfresco(file,ticketNumber,folderPath,tenant));
+		}
+		return results;
+
+	}
 
+	@PostMapping(value = "/bulkUpdate", consumes = { MediaType.APPLICATION_JSON_VALUE })
+	public List<BulkUpdateResult> bulkUpdate(@RequestBody BulkUpdateRequest request) {
+		return alfrescoService.bulkUpdateProperties(request);
+	}
+
+	@PostMapping(value = "/manifest", consumes = { MediaType.APPLICATION_JSON_VALUE })
+	public List<ManifestResult> manifest(@RequestBody ManifestRequest request) {
+		return alfrescoService.compareManifest(request);
+	}
+
+	@GetMapping(value = "/document")
+	public ResponseEntity<InputStreamResource> getDocument(@RequestParam(value="folderPath",required=true)String folderPath,
+									@RequestParam(value="documentName",required=true)String documentName,
+									@RequestParam(value="tenant",required=false)String tenant,
+									@RequestHeader(value="If-None-Match",required=false)String ifNoneMatch) throws IOException {
+		DocumentContent content = alfrescoService.getDocumentContent(folderPath, documentName, tenant, ifNoneMatch);
+		return toResponse(content);
+	}
+
+	@GetMapping(value = "/rendition")
+	public ResponseEntity<InputStreamResource> getRendition(@RequestParam(value="folderPath",required=true)String folderPath,
+									@RequestParam(value="documentName",required=true)String documentName,
+									@RequestParam(value="kind",required=false,defaultValue="cmis:thumbnail")String kind,
+									@RequestParam(value="tenant",required=false)String tenant,
+									@RequestHeader(value="If-None-Match",required=false)String ifNoneMatch) throws IOException {
+		DocumentContent content = alfrescoService.getRendition(folderPath, documentName, kind, tenant, ifNoneMatch);
+		return toResponse(content);
 	}
 
 	@PostMapping(value = "/test", consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
@@ -51,4 +129,48 @@ public class AlfrescoController {
 		}
 
 	}
+
+	/**
+	 * Invalid client input, i.e. an unknown upload mode or an incomplete JSON body, is a 400 and not a 500.
+	 */
+	@ExceptionHandler(IllegalArgumentException.class)
+	public void badRequest(IllegalArgumentException e, HttpServletResponse response) throws IOException {
+		response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+	}
+
+	private ResponseEntity<InputStreamResource> toResponse(DocumentContent content) {
+		if (content == null) {
+			return ResponseEntity.notFound().build();
+		}
+		String etag = "\"" + content.getEtag() + "\"";
+		if (content.isNotModified()) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		try {
+			ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag).contentType(mediaType(content.getMimeType()));
+			if (content.getLength() >= 0) {
+				response.contentLength(content.getLength());
+			}
+			return response.body(new InputStreamResource(content.getStream()));
+		} catch (RuntimeException e) {
+			// The stream never reaches the response, close it here so a download spool is released
+			try {
+				content.getStream().close();
+			} catch (IOException ce) {
+				e.addSuppressed(ce);
+			}
+			throw e;
+		}
+	}
+
+	private static MediaType mediaType(String mimeType) {
+		if (mimeType != null) {
+			try {
+				return MediaType.parseMediaType(mimeType);
+			} catch (InvalidMediaTypeException e) {
+				// A malformed stored MIME type should not make the content unreadable
+			}
+		}
+		return MediaType.APPLICATION_OCTET_STREAM;
+	}
 }
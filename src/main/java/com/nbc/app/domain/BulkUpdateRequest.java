@@ -0,0 +1,56 @@
+package com.nbc.app.domain;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BulkUpdateRequest {
+
+	private List<String> objectIds = new ArrayList<String>();
+	private List<String> paths = new ArrayList<String>();
+	private Map<String, Object> properties = new LinkedHashMap<String, Object>();
+	private int batchSize;
+	private String tenant;
+
+	public List<String> getObjectIds() {
+		return objectIds;
+	}
+
+	public void setObjectIds(List<String> objectIds) {
+		this.objectIds = objectIds;
+	}
+
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	public void setPaths(List<String> paths) {
+		this.paths = paths;
+	}
+
+	public Map<String, Object> getProperties() {
+		return properties;
+	}
+
+	public void setProperties(Map<String, Object> properties) {
+		this.properties = properties;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public String getTenant() {
+		return tenant;
+	}
+
+	public void setTenant(String tenant) {
+		this.tenant = tenant;
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.nbc.app.domain;
+
+public class BulkUpdateResult {
+
+	public static final String UPDATED = "UPDATED";
+	public static final String NOT_FOUND = "NOT_FOUND";
+	public static final String FAILED = "FAILED";
+
+	private String reference;
+	private String objectId;
+	private String status;
+	private String message;
+
+	public BulkUpdateResult(String reference, String objectId, String status, String message) {
+		super();
+		this.reference = reference;
+		this.objectId = objectId;
+		this.status = status;
+		this.message = message;
+	}
+
+	public String getReference() {
+		return reference;
+	}
+
+	public void setReference(String reference) {
+		this.reference = reference;
+	}
+
+	public String getObjectId() {
+		return objectId;
+	}
+
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+}
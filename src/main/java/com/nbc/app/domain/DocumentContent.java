@@ -0,0 +1,67 @@
+package com.nbc.app.domain;
+
+import java.io.InputStream;
+
+public class DocumentContent {
+
+	private InputStream stream;
+	private long length;
+	private String mimeType;
+	private String etag;
+	private boolean notModified;
+
+	public DocumentContent(InputStream stream, long length, String mimeType, String etag) {
+		super();
+		this.stream = stream;
+		this.length = length;
+		this.mimeType = mimeType;
+		this.etag = etag;
+	}
+
+	public static DocumentContent notModified(String etag) {
+		DocumentContent content = new DocumentContent(null, -1, null, etag);
+		content.setNotModified(true);
+		return content;
+	}
+
+	public InputStream getStream() {
+		return stream;
+	}
+
+	public void setStream(InputStream stream) {
+		this.stream = stream;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public void setLength(long length) {
+		this.length = length;
+	}
+
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	public void setMimeType(String mimeType) {
+		this.mimeType = mimeType;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public void setEtag(String etag) {
+		this.etag = etag;
+	}
+
+	public boolean isNotModified() {
+		return notModified;
+	}
+
+	public void setNotModified(boolean notModified) {
+		this.notModified = notModified;
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.nbc.app.domain;
+
+public class ManifestEntry {
+
+	private String name;
+	private long size = -1;
+	private String hash;
+
+	public ManifestEntry() {
+		super();
+	}
+
+	public ManifestEntry(String name, long size, String hash) {
+		super();
+		this.name = name;
+		this.size = size;
+		this.hash = hash;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+}
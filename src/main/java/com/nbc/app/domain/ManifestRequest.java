@@ -0,0 +1,45 @@
+package com.nbc.app.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ManifestRequest {
+
+	private String ticketNumber;
+	private String folderPath;
+	private String tenant;
+	private List<ManifestEntry> files = new ArrayList<ManifestEntry>();
+
+	public String getTicketNumber() {
+		return ticketNumber;
+	}
+
+	public void setTicketNumber(String ticketNumber) {
+		this.ticketNumber = ticketNumber;
+	}
+
+	public String getFolderPath() {
+		return folderPath;
+	}
+
+	public void setFolderPath(String folderPath) {
+		this.folderPath = folderPath;
+	}
+
+	public String getTenant() {
+		return tenant;
+	}
+
+	public void setTenant(String tenant) {
+		this.tenant = tenant;
+	}
+
+	public List<ManifestEntry> getFiles() {
+		return files;
+	}
+
+	public void setFiles(List<ManifestEntry> files) {
+		this.files = files;
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.nbc.app.domain;
+
+public class ManifestResult {
+
+	public static final String NEW = "NEW";
+	public static final String CHANGED = "CHANGED";
+	public static final String UNVERIFIED = "UNVERIFIED";
+
+	private String name;
+	private String objectId;
+	private String status;
+	private String message;
+
+	public ManifestResult(String name, String objectId, String status, String message) {
+		super();
+		this.name = name;
+		this.objectId = objectId;
+		this.status = status;
+		this.message = message;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getObjectId() {
+		return objectId;
+	}
+
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.nbc.app.domain;
+
+import java.io.InputStream;
+
+public class UploadItem {
+
+	private String name;
+	private String mimeType;
+	private InputStream stream;
+	private long size;
+	private String hash;
+
+	public UploadItem(String name, String mimeType, InputStream stream, long size) {
+		super();
+		this.name = name;
+		this.mimeType = mimeType;
+		this.stream = stream;
+		this.size = size;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	public void setMimeType(String mimeType) {
+		this.mimeType = mimeType;
+	}
+
+	public InputStream getStream() {
+		return stream;
+	}
+
+	public void setStream(InputStream stream) {
+		this.stream = stream;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.nbc.app.domain;
+
+public class UploadResult {
+
+	public static final String CREATED = "CREATED";
+	public static final String VERSIONED = "VERSIONED";
+	public static final String SKIPPED = "SKIPPED";
+	public static final String FAILED = "FAILED";
+
+	private String name;
+	private String objectId;
+	private String status;
+	private String message;
+
+	public UploadResult(String name, String objectId, String status, String message) {
+		super();
+		this.name = name;
+		this.objectId = objectId;
+		this.status = status;
+		this.message = message;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getObjectId() {
+		return objectId;
+	}
+
+	public void setObjectId(String objectId) {
+		this.objectId = objectId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+}
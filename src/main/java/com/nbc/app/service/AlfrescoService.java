@@ -1,9 +1,33 @@
 package com.nbc.app.service;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.springframework.web.multipart.MultipartFile;
 
+import com.nbc.app.domain.BulkUpdateRequest;
+import com.nbc.app.domain.BulkUpdateResult;
+import com.nbc.app.domain.DocumentContent;
+import com.nbc.app.domain.ManifestRequest;
+import com.nbc.app.domain.ManifestResult;
+import com.nbc.app.domain.UploadResult;
+
 public interface AlfrescoService {
 	
 	public void uploadFolderToAlfresco(MultipartFile file,String ticketNumber,String folderPath);
 
+	public UploadResult uploadFolderToAlfresco(MultipartFile file,String ticketNumber,String folderPath,String tenant);
+
+	public List<UploadResult> uploadVersionsToAlfresco(MultipartFile[] files,String ticketNumber,String folderPath,String tenant,boolean major,String comment) throws IOException;
+
+	public List<UploadResult> uploadArchiveToAlfresco(MultipartFile archive,String ticketNumber,String folderPath,String tenant) throws IOException;
+
+	public List<BulkUpdateResult> bulkUpdateProperties(BulkUpdateRequest request);
+
+	public List<ManifestResult> compareManifest(ManifestRequest request);
+
+	public DocumentContent getDocumentContent(String folderPath,String documentName,String tenant,String ifNoneMatch) throws IOException;
+
+	public DocumentContent getRendition(String folderPath,String documentName,String kind,String tenant,String ifNoneMatch) throws IOException;
+
 }
@@ -1,56 +1,435 @@
 package com.nbc.app.service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
 import org.apache.chemistry.opencmis.client.api.Session;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.enums.Action;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisUnauthorizedException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.nbc.app.config.AlfrescoClient;
+import com.nbc.app.config.ArchiveExpander;
+import com.nbc.app.config.ArchiveExpander.EntryHandler;
+import com.nbc.app.config.CompressionAdvisor;
+import com.nbc.app.config.CompressionAdvisor.Decision;
+import com.nbc.app.config.ConnectionProfile;
+import com.nbc.app.config.ConnectionRouter;
+import com.nbc.app.config.DownloadCoalescer;
+import com.nbc.app.config.RenditionCache;
+import com.nbc.app.config.RenditionCache.CachedRendition;
+import com.nbc.app.domain.BulkUpdateRequest;
+import com.nbc.app.domain.BulkUpdateResult;
+import com.nbc.app.domain.DocumentContent;
+import com.nbc.app.domain.ManifestEntry;
+import com.nbc.app.domain.ManifestRequest;
+import com.nbc.app.domain.ManifestResult;
+import com.nbc.app.domain.UploadItem;
+import com.nbc.app.domain.UploadResult;
 
 @Service
 public class AlfrescoServiceImpl implements AlfrescoService {
 
-	private static Log logger = LogFactory.getLog(AlfrescoServiceImpl.class);
-
-	@Value("${alfresco.userName}")
-	String ALFRESCO_USERNAME;
-
-	@Value("${alfresco.connectionName}")
-	String ALFRESCO_CONNECTION_NAME;
-
-	@Value("${alfresco.password}")
-	String ALFRESCO_PASSWORD;
+	private static final Logger logger = LoggerFactory.getLogger(AlfrescoServiceImpl.class);
 
 	@Value("${alfresco.fileDescption}")
 	String ALFRESCO_FILE_DESC;
 
+	@Value("${alfresco.bulkUpdate.batchSize:100}")
+	int BULK_UPDATE_BATCH_SIZE;
+
+	@Value("${alfresco.bulkUpdate.maxObjects:10000}")
+	int BULK_UPDATE_MAX_OBJECTS;
+
 	@Autowired
 	AlfrescoClient alfrescoClient;
 
+	@Autowired
+	ConnectionRouter connectionRouter;
+
+	@Autowired
+	CompressionAdvisor compressionAdvisor;
+
+	@Autowired
+	RenditionCache renditionCache;
+
+	@Autowired
+	ArchiveExpander archiveExpander;
+
+	@Autowired
+	DownloadCoalescer downloadCoalescer;
+
 	@Override
 	public void uploadFolderToAlfresco(MultipartFile file,String ticketNumber,String folderPath) {
+		uploadFolderToAlfresco(file, ticketNumber, folderPath, null);
+	}
 
-		Session session = alfrescoClient.getSession(ALFRESCO_CONNECTION_NAME, ALFRESCO_USERNAME, ALFRESCO_PASSWORD);
+	@Override
+	public UploadResult uploadFolderToAlfresco(MultipartFile file,String ticketNumber,String folderPath,String tenant) {
+
+		ConnectionProfile profile = connectionRouter.resolve(tenant, folderPath);
+		connectionRouter.acquire(profile);
 		try {
-			logger.info("Uploading file to Alfresco");
+			Decision compression = compressionAdvisor.decide(file.getContentType(), file.getSize(), file.getInputStream());
+			Session session = alfrescoClient.getSession(profile, compression.isCompress());
+			logger.debug("Uploading file to Alfresco using connection profile {} compressed={}", profile.getName(),
+					compression.isCompress());
 			
 			boolean folderFlag = alfrescoClient.checkFolderExists(session, ticketNumber, folderPath);
 			if(folderFlag) {
 				alfrescoClient.createFolder(session, ticketNumber, folderPath);
 			}
 					
-			alfrescoClient.uploadDocument(session, file.getOriginalFilename(),file.getContentType(), file.getInputStream(), file.getSize(),ALFRESCO_FILE_DESC,folderPath+"/"+ticketNumber);
+			String objectId = alfrescoClient.uploadDocument(session, file.getOriginalFilename(),file.getContentType(), compression.getStream(), file.getSize(),ALFRESCO_FILE_DESC,folderPath+"/"+ticketNumber,() -> contentHash(file));
 			
-			logger.info("Document uploaded successfully");
+			logger.debug("Document uploaded successfully");
+			return new UploadResult(file.getOriginalFilename(), objectId, objectId != null ? UploadResult.CREATED : UploadResult.SKIPPED, null);
 		} catch (IOException e) {
-			e.printStackTrace();
+			logger.error("Could not read uploaded file {}", file.getOriginalFilename(), e);
+			return new UploadResult(file.getOriginalFilename(), null, UploadResult.FAILED, e.getMessage());
+		} finally {
+			connectionRouter.release(profile);
 		}
 
 	}
 
+	@Override
+	public List<UploadResult> uploadVersionsToAlfresco(MultipartFile[] files,String ticketNumber,String folderPath,String tenant,boolean major,String comment) throws IOException {
+		ConnectionProfile profile = connectionRouter.resolve(tenant, folderPath);
+		String ticketPath = folderPath + "/" + ticketNumber;
+		connectionRouter.acquire(profile);
+		try {
+			Session session = alfrescoClient.getSession(profile);
+			if (alfrescoClient.checkFolderExists(session, ticketNumber, folderPath)) {
+				alfrescoClient.createFolder(session, ticketNumber, folderPath);
+			}
+
+			List<String> names = new ArrayList<String>(files.length);
+			for (MultipartFile file : files) {
+				names.add(file.getOriginalFilename());
+			}
+			Map<String, ObjectId> workingCopies = alfrescoClient.checkOutVersions(session, ticketPath, names);
+
+			List<UploadResult> results = new ArrayList<UploadResult>(files.length);
+			try {
+				// One file open at a time, and like uploadFolderToAlfresco every file decides its own compression
+				for (MultipartFile file : files) {
+					String hash = contentHash(file);
+					try (InputStream in = file.getInputStream()) {
+						Decision compression = compressionAdvisor.decide(file.getContentType(), file.getSize(), in);
+						UploadItem item = new UploadItem(file.getOriginalFilename(), file.getContentType(), compression.getStream(), file.getSize());
+						item.setHash(hash);
+						results.add(alfrescoClient.uploadVersion(alfrescoClient.getSession(profile, compression.isCompress()),
+								ticketPath, item, workingCopies.remove(item.getName()), ALFRESCO_FILE_DESC, major, comment));
+					}
+				}
+			} finally {
+				// Left over when a file could not be read
+				alfrescoClient.cancelCheckOuts(session, workingCopies.values());
+			}
+			logger.info("event=document.versions path={} files={} major={}", ticketPath, files.length, major);
+			return results;
+		} finally {
+			connectionRouter.release(profile);
+		}
+	}
+
+	@Override
+	public List<UploadResult> uploadArchiveToAlfresco(MultipartFile archive,String ticketNumber,String folderPath,String tenant) throws IOException {
+		ConnectionProfile profile = connectionRouter.resolve(tenant, folderPath);
+		String ticketPath = folderPath + "/" + ticketNumber;
+		connectionRouter.acquire(profile);
+		try {
+			Session session = alfrescoClient.getSession(profile);
+			if (alfrescoClient.checkFolderExists(session, ticketNumber, folderPath)) {
+				alfrescoClient.createFolder(session, ticketNumber, folderPath);
+			}
+		} finally {
+			connectionRouter.release(profile);
+		}
+
+		// Every folder and file takes its own slot on the profile, the uploads run in parallel
+		List<UploadResult> results = Collections.synchronizedList(new ArrayList<UploadResult>());
+		EntryHandler handler = new EntryHandler() {
+			@Override
+			public void folder(String path) {
+				int slash = path.lastIndexOf('/');
+				String parent = slash > 0 ? ticketPath + "/" + path.substring(0, slash) : ticketPath;
+				String name = path.substring(slash + 1);
+				connectionRouter.acquire(profile);
+				try {
+					Session session = alfrescoClient.getSession(profile);
+					if (alfrescoClient.checkFolderExists(session, name, parent)) {
+						alfrescoClient.createFolder(session, name, parent);
+					}
+				} catch (CmisBaseException e) {
+					// The files in it fail on their own, the rest of the archive goes on
+					logger.error("event=archive.entry.failed path={} error={}", parent + "/" + name, e.getMessage());
+					results.add(new UploadResult(path + "/", null, UploadResult.FAILED, e.getMessage()));
+				} finally {
+					connectionRouter.release(profile);
+				}
+			}
+
+			@Override
+			public void file(String path, InputStream content, long size) throws IOException {
+				int slash = path.lastIndexOf('/');
+				String parent = slash > 0 ? ticketPath + "/" + path.substring(0, slash) : ticketPath;
+				String name = path.substring(slash + 1);
+				String mimeType = URLConnection.guessContentTypeFromName(name);
+				if (mimeType == null) {
+					mimeType = "application/octet-stream";
+				}
+				// Buffered entries are hashed up front and the hash goes with the new document, streamed
+				// entries are hashed while they are sent and the hash is stored right after
+				String hash = null;
+				MessageDigest digest = null;
+				if (alfrescoClient.isHashStored()) {
+					if (content instanceof ByteArrayInputStream) {
+						content.mark(Integer.MAX_VALUE);
+						hash = DigestUtils.sha256Hex(content);
+						content.reset();
+					} else {
+						digest = DigestUtils.getSha256Digest();
+						content = new DigestInputStream(content, digest);
+					}
+				}
+				connectionRouter.acquire(profile);
+				try {
+					Decision compression = compressionAdvisor.decide(mimeType, size, content);
+					Session session = alfrescoClient.getSession(profile, compression.isCompress());
+					String objectId = alfrescoClient.uploadDocument(session, name, mimeType, compression.getStream(), size,
+							ALFRESCO_FILE_DESC, parent, hash);
+					if (objectId != null && digest != null) {
+						alfrescoClient.storeHash(session, objectId, Hex.encodeHexString(digest.digest()));
+					}
+					results.add(new UploadResult(path, objectId, objectId != null ? UploadResult.CREATED : UploadResult.SKIPPED, null));
+				} catch (CmisBaseException e) {
+					logger.error("event=archive.entry.failed path={} error={}", parent + "/" + name, e.getMessage());
+					results.add(new UploadResult(path, null, UploadResult.FAILED, e.getMessage()));
+				} finally {
+					connectionRouter.release(profile);
+				}
+			}
+
+			@Override
+			public void rejected(String name, String reason) {
+				logger.warn("event=archive.entry.rejected name={} reason={}", name, reason);
+				results.add(new UploadResult(name, null, UploadResult.FAILED, reason));
+			}
+
+			@Override
+			public void skipped(String name, String reason) {
+				results.add(new UploadResult(name, null, UploadResult.SKIPPED, reason));
+			}
+		};
+
+		try (InputStream in = archive.getInputStream()) {
+			archiveExpander.expand(in, handler);
+		}
+		List<UploadResult> sorted = new ArrayList<UploadResult>(results);
+		Collections.sort(sorted, Comparator.comparing(UploadResult::getName));
+		logger.info("event=archive.expanded path={} archive={} files={}", ticketPath, archive.getOriginalFilename(), sorted.size());
+		return sorted;
+	}
+
+	@Override
+	public List<BulkUpdateResult> bulkUpdateProperties(BulkUpdateRequest request) {
+		if (request.getProperties() == null || request.getProperties().isEmpty()) {
+			throw new IllegalArgumentException("No properties to update were supplied");
+		}
+		if (request.getObjectIds() == null || request.getPaths() == null) {
+			throw new IllegalArgumentException("objectIds and paths must be lists, leave them out when there are none");
+		}
+		int objectCount = request.getObjectIds().size() + request.getPaths().size();
+		if (objectCount > BULK_UPDATE_MAX_OBJECTS) {
+			throw new IllegalArgumentException("A bulk update is limited to " + BULK_UPDATE_MAX_OBJECTS + " objects");
+		}
+		int batchSize = request.getBatchSize() > 0 ? Math.min(request.getBatchSize(), BULK_UPDATE_BATCH_SIZE) : BULK_UPDATE_BATCH_SIZE;
+		String routingPath = request.getPaths().isEmpty() ? null : request.getPaths().get(0);
+
+		ConnectionProfile profile = connectionRouter.resolve(request.getTenant(), routingPath);
+		connectionRouter.acquire(profile);
+		try {
+			Session session = alfrescoClient.getSession(profile);
+			logger.info("Bulk updating {} object(s) in batches of {}", objectCount, batchSize);
+			return alfrescoClient.bulkUpdateProperties(session, request.getObjectIds(), request.getPaths(),
+					request.getProperties(), batchSize);
+		} finally {
+			connectionRouter.release(profile);
+		}
+	}
+
+	@Override
+	public List<ManifestResult> compareManifest(ManifestRequest request) {
+		if (request.getTicketNumber() == null || request.getFolderPath() == null) {
+			throw new IllegalArgumentException("ticketNumber and folderPath are required");
+		}
+		if (request.getFiles() == null) {
+			throw new IllegalArgumentException("files is required");
+		}
+		for (ManifestEntry entry : request.getFiles()) {
+			if (entry == null || entry.getName() == null) {
+				throw new IllegalArgumentException("Every file of the manifest needs a name");
+			}
+		}
+		String ticketPath = request.getFolderPath() + "/" + request.getTicketNumber();
+		ConnectionProfile profile = connectionRouter.resolve(request.getTenant(), request.getFolderPath());
+		connectionRouter.acquire(profile);
+		try {
+			Session session = alfrescoClient.getSession(profile);
+			// One listing of the ticket folder instead of one lookup per file
+			Map<String, Document> stored = alfrescoClient.listDocuments(session, ticketPath);
+
+			List<ManifestResult> results = new ArrayList<ManifestResult>();
+			for (ManifestEntry entry : request.getFiles()) {
+				ManifestResult result = compare(entry, stored.get(entry.getName()));
+				if (result != null) {
+					results.add(result);
+				}
+			}
+			logger.info("event=manifest.compared path={} files={} upload={}", ticketPath, request.getFiles().size(),
+					results.size());
+			return results;
+		} finally {
+			connectionRouter.release(profile);
+		}
+	}
+
+	/*
+	 * Decide whether a manifest entry has to be uploaded, returns null if the stored document is the same.
+	 * Only a matching hash proves a file is unchanged, the size can only prove it changed.
+	 */
+	private ManifestResult compare(ManifestEntry entry, Document document) {
+		if (document == null) {
+			return new ManifestResult(entry.getName(), null, ManifestResult.NEW, null);
+		}
+		if (entry.getSize() >= 0 && entry.getSize() != document.getContentStreamLength()) {
+			return new ManifestResult(entry.getName(), document.getId(), ManifestResult.CHANGED, "Size differs");
+		}
+		String storedHash = alfrescoClient.getStoredHash(document);
+		if (entry.getHash() == null || storedHash == null) {
+			return new ManifestResult(entry.getName(), document.getId(), ManifestResult.UNVERIFIED,
+					entry.getHash() == null ? "No hash supplied" : "No hash stored on the document");
+		}
+		if (!storedHash.equalsIgnoreCase(entry.getHash())) {
+			return new ManifestResult(entry.getName(), document.getId(), ManifestResult.CHANGED, "Hash differs");
+		}
+		return null;
+	}
+
+	/*
+	 * SHA-256 of an uploaded file, read from the local multipart copy before it is sent to the repository.
+	 */
+	private String contentHash(MultipartFile file) throws IOException {
+		if (!alfrescoClient.isHashStored()) {
+			return null;
+		}
+		try (InputStream in = file.getInputStream()) {
+			return DigestUtils.sha256Hex(in);
+		}
+	}
+
+	@Override
+	public DocumentContent getDocumentContent(String folderPath,String documentName,String tenant,String ifNoneMatch) throws IOException {
+		ConnectionProfile profile = connectionRouter.resolve(tenant, folderPath);
+		Session session;
+		Document document;
+		String etag;
+		connectionRouter.acquire(profile);
+		try {
+			session = alfrescoClient.getSession(profile);
+			document = alfrescoClient.getDocumentSummary(session, folderPath, documentName);
+			if (document == null) {
+				return null;
+			}
+			if (!document.getAllowableActions().getAllowableActions().contains(Action.CAN_GET_CONTENT_STREAM)) {
+				throw new CmisUnauthorizedException("Current user does not have permission to get the content stream for "
+						+ folderPath + "/" + documentName);
+			}
+			String changeToken = document.getChangeToken() != null ? document.getChangeToken()
+					: String.valueOf(document.getLastModificationDate().getTimeInMillis());
+			etag = DigestUtils.sha1Hex(document.getId() + "|" + changeToken);
+			if (ifNoneMatch != null && ifNoneMatch.replace("\"", "").equals(etag)) {
+				return DocumentContent.notModified(etag);
+			}
+		} finally {
+			connectionRouter.release(profile);
+		}
+
+		// Concurrent downloads of the same version through the same account share one repository read,
+		// which holds a slot of the profile until the whole content was read from the repository
+		String objectId = document.getId();
+		String key = profile.getName() + "|" + session.getRepositoryInfo().getId() + "|" + etag;
+		InputStream content = downloadCoalescer.open(key, document.getContentStreamLength(), () -> {
+			connectionRouter.acquire(profile);
+			try {
+				return connectionRouter.releaseOnClose(profile, alfrescoClient.getContent(session, objectId));
+			} catch (RuntimeException e) {
+				connectionRouter.release(profile);
+				throw e;
+			}
+		});
+		return new DocumentContent(content, document.getContentStreamLength(), document.getContentStreamMimeType(), etag);
+	}
+
+	@Override
+	public DocumentContent getRendition(String folderPath,String documentName,String kind,String tenant,String ifNoneMatch) throws IOException {
+		ConnectionProfile profile = connectionRouter.resolve(tenant, folderPath);
+		connectionRouter.acquire(profile);
+		try {
+			Session session = alfrescoClient.getSession(profile);
+
+			// Revalidate with a light lookup, the change token decides whether the cached bytes are current
+			Document document = alfrescoClient.getDocumentSummary(session, folderPath, documentName);
+			if (document == null) {
+				return null;
+			}
+			if (!document.getAllowableActions().getAllowableActions().contains(Action.CAN_GET_RENDITIONS)) {
+				throw new CmisUnauthorizedException("Current user does not have permission to get the renditions for "
+						+ folderPath + "/" + documentName);
+			}
+			String changeToken = document.getChangeToken() != null ? document.getChangeToken()
+					: String.valueOf(document.getLastModificationDate().getTimeInMillis());
+			String key = renditionCache.key(document.getId(), changeToken, kind);
+			if (ifNoneMatch != null && ifNoneMatch.replace("\"", "").equals(key)) {
+				return DocumentContent.notModified(key);
+			}
+
+			CachedRendition cached = renditionCache.open(key);
+			if (cached == null) {
+				ContentStream rendition = alfrescoClient.getRenditionContent(session, document.getId(), kind);
+				// CMIS allows a rendition without a stream, there is nothing to serve either way
+				if (rendition == null || rendition.getStream() == null) {
+					return null;
+				}
+				cached = renditionCache.put(key, rendition.getMimeType(), rendition.getStream());
+				logger.debug("Cached rendition {} of {}/{}", kind, folderPath, documentName);
+			}
+			return new DocumentContent(cached.getStream(), cached.getLength(), cached.getMimeType(), key);
+		} finally {
+			connectionRouter.release(profile);
+		}
+	}
+
 }
@@ -0,0 +1,325 @@
+package com.nbc.app.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ObjectFactory;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.ObjectType;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.AllowableActions;
+import org.apache.chemistry.opencmis.commons.data.BulkUpdateObjectIdAndChangeToken;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.data.RepositoryCapabilities;
+import org.apache.chemistry.opencmis.commons.definitions.PropertyDefinition;
+import org.apache.chemistry.opencmis.commons.enums.Action;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityQuery;
+import org.apache.chemistry.opencmis.commons.enums.CmisVersion;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.apache.chemistry.opencmis.commons.enums.VersioningState;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisUpdateConflictException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.BulkUpdateObjectIdAndChangeTokenImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.nbc.app.domain.BulkUpdateResult;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class AlfrescoClientTest {
+
+	private AlfrescoClient client;
+	private Session session;
+	// Objects the repository leaves alone in a bulk update, i.e. because their change token is stale
+	private final Set<String> conflicting = new HashSet<String>();
+	// One mock per id, so that batches can be matched by equality
+	private final Map<String, CmisObject> objects = new HashMap<String, CmisObject>();
+
+	@Before
+	public void setUp() {
+		PermissionCache permissionCache = new PermissionCache();
+		permissionCache.ttlMillis = 60000;
+		permissionCache.maxEntries = 100;
+		client = new AlfrescoClient();
+		client.permissionCache = permissionCache;
+		client.DOCUMENT_TYPE = "cmis:document";
+		client.HASH_PROPERTY = "";
+
+		session = PermissionCacheTest.session("reports", "repo");
+		when(session.getObjectFactory()).thenReturn(mock(ObjectFactory.class));
+		when(session.createObjectId(any(String.class))).thenReturn(mock(ObjectId.class));
+		ObjectId created = mock(ObjectId.class);
+		when(created.getId()).thenReturn("doc");
+		when(session.createDocument(anyMap(), any(ObjectId.class), any(ContentStream.class), any(VersioningState.class)))
+				.thenReturn(created);
+	}
+
+	@Test
+	public void batchIntoOneFolderFetchesTheFolderOnce() throws IOException {
+		Folder folder = folder("folder-1");
+		when(session.getObjectByPath(eq("/CI/T1"), any(OperationContext.class))).thenReturn(folder);
+
+		for (int i = 0; i < 5; i++) {
+			// What the service does per file in the default SKIP mode
+			assertFalse(client.checkFolderExists(session, "T1", "/CI"));
+			assertEquals("doc", upload("file" + i + ".txt"));
+		}
+		verify(session, times(1)).getObjectByPath(eq("/CI/T1"), any(OperationContext.class));
+	}
+
+	@Test
+	public void staleFolderIsLookedUpAgainAfterNotFound() throws IOException {
+		Folder folder = folder("folder-1");
+		when(session.getObjectByPath(eq("/CI/T1"), any(OperationContext.class))).thenReturn(folder);
+		assertFalse(client.checkFolderExists(session, "T1", "/CI"));
+
+		// Deleted by someone else, the cache still knows the old id
+		when(session.createDocument(anyMap(), any(ObjectId.class), any(ContentStream.class), any(VersioningState.class)))
+				.thenThrow(new CmisObjectNotFoundException("gone"));
+		when(session.getObjectByPath(eq("/CI/T1"), any(OperationContext.class)))
+				.thenThrow(new CmisObjectNotFoundException("gone"));
+		try {
+			upload("file.txt");
+			fail("The stale folder should fail the upload");
+		} catch (CmisObjectNotFoundException e) {
+			assertEquals("gone", e.getMessage());
+		}
+
+		assertTrue(client.checkFolderExists(session, "T1", "/CI"));
+		verify(session, times(2)).getObjectByPath(eq("/CI/T1"), any(OperationContext.class));
+	}
+
+	@Test
+	public void hashIsOnlyComputedForNewDocuments() throws IOException {
+		client.HASH_PROPERTY = "nbc:contentSha256";
+		ObjectType documentType = type("nbc:contentSha256", PropertyType.STRING);
+		CmisObject parent = folder("folder-1");
+		Document existing = mock(Document.class);
+		when(session.getTypeDefinition("cmis:document")).thenReturn(documentType);
+		when(session.getObjectByPath(eq("/CI/T1"), any(OperationContext.class))).thenReturn(parent);
+		when(session.getObjectByPath("/CI/T1/old.txt")).thenReturn(existing);
+		AtomicInteger hashed = new AtomicInteger();
+		AlfrescoClient.ContentHash hash = () -> {
+			hashed.incrementAndGet();
+			return "abc";
+		};
+
+		assertNull(client.uploadDocument(session, "old.txt", "text/plain", new ByteArrayInputStream(new byte[1]), 1, "test",
+				"/CI/T1", hash));
+		assertEquals(0, hashed.get());
+
+		assertEquals("doc", client.uploadDocument(session, "new.txt", "text/plain", new ByteArrayInputStream(new byte[1]), 1,
+				"test", "/CI/T1", hash));
+		assertEquals(1, hashed.get());
+		ArgumentCaptor<Map> properties = ArgumentCaptor.forClass(Map.class);
+		verify(session).createDocument(properties.capture(), any(ObjectId.class), any(ContentStream.class),
+				any(VersioningState.class));
+		assertEquals("abc", properties.getValue().get("nbc:contentSha256"));
+	}
+
+	@Test
+	public void bulkUpdateConvertsJsonValuesToThePropertyTypes() {
+		bulkRepository("1");
+		Map<String, Object> properties = new LinkedHashMap<String, Object>();
+		properties.put("nbc:due", "2017-10-01T08:30:00Z");
+		properties.put("nbc:reviewed", "2017-10-01");
+		properties.put("nbc:count", 3);
+		properties.put("nbc:score", 2.5);
+		properties.put("nbc:flag", "true");
+		properties.put("nbc:tags", Arrays.asList("a", 1));
+		properties.put("nbc:auditor", "ci");
+		properties.put("nbc:unknown", 7L);
+
+		List<BulkUpdateResult> results = client.bulkUpdateProperties(session, Collections.singletonList("1"),
+				Collections.<String>emptyList(), properties, 10);
+
+		assertEquals(BulkUpdateResult.UPDATED, results.get(0).getStatus());
+		Map<String, Object> sent = sentProperties(1).get(0);
+		assertEquals(1506846600000L, ((GregorianCalendar) sent.get("nbc:due")).getTimeInMillis());
+		assertEquals(1506816000000L, ((GregorianCalendar) sent.get("nbc:reviewed")).getTimeInMillis());
+		assertEquals(BigInteger.valueOf(3), sent.get("nbc:count"));
+		assertEquals(new BigDecimal("2.5"), sent.get("nbc:score"));
+		assertEquals(Boolean.TRUE, sent.get("nbc:flag"));
+		assertEquals(Arrays.asList("a", "1"), sent.get("nbc:tags"));
+		// Defined by the secondary type only
+		assertEquals("ci", sent.get("nbc:auditor"));
+		// Left for the repository to refuse
+		assertEquals(7L, sent.get("nbc:unknown"));
+	}
+
+	@Test
+	public void bulkUpdateValueOfTheWrongTypeFailsTheBatch() {
+		bulkRepository("1", "2");
+		List<BulkUpdateResult> results = client.bulkUpdateProperties(session, Arrays.asList("1", "2"),
+				Collections.<String>emptyList(), Collections.<String, Object>singletonMap("nbc:count", 2.5), 10);
+
+		for (BulkUpdateResult result : results) {
+			assertEquals(BulkUpdateResult.FAILED, result.getStatus());
+			assertEquals("Property nbc:count takes integer values, not 2.5", result.getMessage());
+		}
+		verify(session, never()).bulkUpdateProperties(anyList(), anyMap(), anyList(), anyList());
+	}
+
+	@Test
+	public void bulkUpdateSendsOneCallPerBatch() {
+		bulkRepository("1", "2", "3", "4", "5");
+		List<BulkUpdateResult> results = client.bulkUpdateProperties(session, Arrays.asList("1", "2", "3", "4", "5"),
+				Collections.<String>emptyList(), Collections.<String, Object>singletonMap("cmis:description", "x"), 2);
+
+		assertEquals(3, sentProperties(3).size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(String.valueOf(i + 1), results.get(i).getReference());
+			assertEquals(BulkUpdateResult.UPDATED, results.get(i).getStatus());
+		}
+	}
+
+	@Test
+	public void bulkUpdateReportsChangeTokenConflicts() {
+		bulkRepository("1", "2", "3", "4");
+		conflicting.add("2");
+		// The whole second batch is refused
+		doThrow(new CmisUpdateConflictException("Change token mismatch")).when(session)
+				.bulkUpdateProperties(eq(Arrays.asList(object("3"), object("4"))), anyMap(), anyList(), anyList());
+		List<BulkUpdateResult> results = client.bulkUpdateProperties(session, Arrays.asList("1", "2", "3", "4"),
+				Collections.<String>emptyList(), Collections.<String, Object>singletonMap("cmis:description", "x"), 2);
+
+		assertEquals(BulkUpdateResult.UPDATED, results.get(0).getStatus());
+		assertEquals(BulkUpdateResult.FAILED, results.get(1).getStatus());
+		assertEquals("Object was not updated by the repository", results.get(1).getMessage());
+		assertEquals(BulkUpdateResult.FAILED, results.get(2).getStatus());
+		assertEquals("Change token mismatch", results.get(3).getMessage());
+	}
+
+	@Test
+	public void bulkUpdateGoesOnPastMissingObjects() {
+		bulkRepository("1", "3");
+		when(session.getObject(eq("2"), any(OperationContext.class))).thenThrow(new CmisObjectNotFoundException("gone"));
+		when(session.getObjectByPath(eq("/CI/T1/a.txt"), any(OperationContext.class))).thenReturn(object("3"));
+		List<BulkUpdateResult> results = client.bulkUpdateProperties(session, Arrays.asList("1", "2"),
+				Collections.singletonList("/CI/T1/a.txt"), Collections.<String, Object>singletonMap("cmis:description", "x"), 10);
+
+		assertEquals(BulkUpdateResult.UPDATED, results.get(0).getStatus());
+		assertEquals(BulkUpdateResult.NOT_FOUND, results.get(1).getStatus());
+		assertEquals(BulkUpdateResult.UPDATED, results.get(2).getStatus());
+		assertEquals("3", results.get(2).getObjectId());
+	}
+
+	/*
+	 * A CMIS 1.1 repository without query support holding the given documents, each with a secondary type.
+	 */
+	private void bulkRepository(String... objectIds) {
+		RepositoryCapabilities capabilities = mock(RepositoryCapabilities.class);
+		when(capabilities.getQueryCapability()).thenReturn(CapabilityQuery.NONE);
+		when(session.getRepositoryInfo().getCapabilities()).thenReturn(capabilities);
+		when(session.getRepositoryInfo().getCmisVersion()).thenReturn(CmisVersion.CMIS_1_1);
+
+		ObjectType report = type("cmis:description", PropertyType.STRING, "nbc:due", PropertyType.DATETIME,
+				"nbc:reviewed", PropertyType.DATETIME, "nbc:count", PropertyType.INTEGER, "nbc:score", PropertyType.DECIMAL,
+				"nbc:flag", PropertyType.BOOLEAN, "nbc:tags", PropertyType.STRING);
+		when(session.getTypeDefinition("D:nbc:report")).thenReturn(report);
+		ObjectType audit = type("nbc:auditor", PropertyType.STRING);
+		when(session.getTypeDefinition("P:nbc:audit")).thenReturn(audit);
+
+		for (String objectId : objectIds) {
+			CmisObject object = object(objectId);
+			when(session.getObject(eq(objectId), any(OperationContext.class))).thenReturn(object);
+		}
+		when(session.bulkUpdateProperties(anyList(), anyMap(), anyList(), anyList())).thenAnswer(invocation -> {
+			List<BulkUpdateObjectIdAndChangeToken> updated = new ArrayList<BulkUpdateObjectIdAndChangeToken>();
+			for (Object object : (List<?>) invocation.getArguments()[0]) {
+				String objectId = ((CmisObject) object).getId();
+				if (!conflicting.contains(objectId)) {
+					updated.add(new BulkUpdateObjectIdAndChangeTokenImpl(objectId, "2"));
+				}
+			}
+			return updated;
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> sentProperties(int calls) {
+		ArgumentCaptor<Map> properties = ArgumentCaptor.forClass(Map.class);
+		verify(session, times(calls)).bulkUpdateProperties(anyList(), properties.capture(), anyList(), anyList());
+		List<Map<String, Object>> sent = new ArrayList<Map<String, Object>>();
+		for (Map<?, ?> map : properties.getAllValues()) {
+			sent.add((Map<String, Object>) map);
+		}
+		return sent;
+	}
+
+	private CmisObject object(String objectId) {
+		return objects.computeIfAbsent(objectId, id -> {
+			CmisObject object = mock(CmisObject.class);
+			when(object.getId()).thenReturn(id);
+			when(object.getPropertyValue(PropertyIds.OBJECT_TYPE_ID)).thenReturn("D:nbc:report");
+			when(object.getPropertyValue(PropertyIds.SECONDARY_OBJECT_TYPE_IDS)).thenReturn(Collections.singletonList("P:nbc:audit"));
+			return object;
+		});
+	}
+
+	private static ObjectType type(Object... idsAndTypes) {
+		Map<String, PropertyDefinition<?>> definitions = new HashMap<String, PropertyDefinition<?>>();
+		for (int i = 0; i < idsAndTypes.length; i += 2) {
+			PropertyDefinition<?> definition = mock(PropertyDefinition.class);
+			when(definition.getPropertyType()).thenReturn((PropertyType) idsAndTypes[i + 1]);
+			definitions.put((String) idsAndTypes[i], definition);
+		}
+		ObjectType type = mock(ObjectType.class);
+		when(type.getPropertyDefinitions()).thenReturn(definitions);
+		return type;
+	}
+
+	private String upload(String name) throws IOException {
+		return client.uploadDocument(session, name, "text/plain", new ByteArrayInputStream(new byte[1]), 1, "test",
+				"/CI/T1", (String) null);
+	}
+
+	private static Folder folder(String id) {
+		Folder folder = mock(Folder.class);
+		when(folder.getId()).thenReturn(id);
+		AllowableActions allowableActions = mock(AllowableActions.class);
+		when(allowableActions.getAllowableActions()).thenReturn(EnumSet.of(Action.CAN_CREATE_DOCUMENT,
+				Action.CAN_CREATE_FOLDER));
+		when(folder.getAllowableActions()).thenReturn(allowableActions);
+		return folder;
+	}
+}
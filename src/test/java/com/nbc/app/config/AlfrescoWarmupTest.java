@@ -0,0 +1,73 @@
+package com.nbc.app.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class AlfrescoWarmupTest {
+
+	private AlfrescoWarmup warmup;
+	private AlfrescoClient client;
+	private Session session;
+
+	@Before
+	public void setUp() {
+		client = mock(AlfrescoClient.class);
+		when(client.getDocumentType()).thenReturn("D:nbc:report");
+		session = mock(Session.class);
+		when(client.getSession(any(ConnectionProfile.class), anyBoolean())).thenReturn(session);
+
+		ConnectionProfile profile = new ConnectionProfile();
+		profile.setName("main");
+		profile.setRequired(true);
+		ConnectionRouter router = mock(ConnectionRouter.class);
+		when(router.getProfiles()).thenReturn(Collections.singletonList(profile));
+
+		warmup = new AlfrescoWarmup();
+		warmup.enabled = true;
+		warmup.retryDelayMillis = 10;
+		warmup.typeIds = new String[] { " P:nbc:audit ", "cmis:folder", "" };
+		warmup.alfrescoClient = client;
+		warmup.connectionRouter = router;
+		warmup.compressionAdvisor = mock(CompressionAdvisor.class);
+	}
+
+	@Test
+	public void warmsTheConfiguredDocumentTypeAndTheListedTypes() {
+		assertEquals(Arrays.asList("cmis:folder", "D:nbc:report", "P:nbc:audit"), Arrays.asList(warmup.typesToWarm().toArray()));
+	}
+
+	@Test
+	public void loadsOnlyTheTypesItNeeds() throws InterruptedException {
+		warmup.onApplicationEvent(null);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!warmup.isReady() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(warmup.isReady());
+
+		verify(session).getTypeDefinition("cmis:folder");
+		verify(session).getTypeDefinition("D:nbc:report");
+		verify(session).getTypeDefinition("P:nbc:audit");
+		verify(session, times(3)).getTypeDefinition(anyString());
+		verify(client, never()).getTypeDescendants(any(Session.class));
+	}
+}
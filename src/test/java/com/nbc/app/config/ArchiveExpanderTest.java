@@ -0,0 +1,350 @@
+package com.nbc.app.config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class ArchiveExpanderTest {
+
+	private static final int MAX_ENTRY_BYTES = 64;
+
+	private ArchiveExpander expander;
+	private Recorder recorder;
+
+	@Before
+	public void setUp() {
+		expander = new ArchiveExpander();
+		expander.parallelism = 2;
+		expander.maxEntryBytes = MAX_ENTRY_BYTES;
+		expander.maxEntries = 100;
+		expander.maxTotalBytes = 1024 * 1024;
+		expander.init();
+		recorder = new Recorder();
+	}
+
+	@After
+	public void tearDown() {
+		expander.destroy();
+	}
+
+	@Test
+	public void expandsZip() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(bytes)) {
+			zipFolder(zip, "docs/");
+			zipFile(zip, "docs/api/readme.txt", "read me");
+			zipFile(zip, "top.txt", "top");
+		}
+		expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+
+		assertEquals(list("docs", "docs/api"), recorder.folders);
+		assertEquals("read me", recorder.text("docs/api/readme.txt"));
+		assertEquals("top", recorder.text("top.txt"));
+		assertTrue(recorder.rejected.isEmpty());
+	}
+
+	@Test
+	public void expandsTarGz() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+			tarFile(tar, "logs/build.log", "built");
+			tarFile(tar, "logs/test/junit.xml", "<testsuite/>");
+		}
+		expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+
+		assertEquals(list("logs", "logs/test"), recorder.folders);
+		assertEquals("built", recorder.text("logs/build.log"));
+		assertEquals("<testsuite/>", recorder.text("logs/test/junit.xml"));
+	}
+
+	@Test
+	public void expandsTarBz2() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new BZip2CompressorOutputStream(bytes))) {
+			tarFile(tar, "a.txt", "a");
+			tarFile(tar, "b/c.txt", "c");
+		}
+		expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+
+		assertEquals(list("b"), recorder.folders);
+		assertEquals("a", recorder.text("a.txt"));
+		assertEquals("c", recorder.text("b/c.txt"));
+	}
+
+	@Test
+	public void rejectsEntriesOutsideTheArchiveAndGoesOn() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(bytes)) {
+			zipFile(zip, "ok.txt", "ok");
+			zipFile(zip, "../evil.txt", "evil");
+			zipFile(zip, "docs/../../evil2.txt", "evil");
+			zipFile(zip, "./docs/./fine.txt", "fine");
+		}
+		expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+
+		assertEquals(list("../evil.txt", "docs/../../evil2.txt"), sorted(recorder.rejected.keySet()));
+		assertEquals(list("docs/fine.txt", "ok.txt"), sorted(recorder.files.keySet()));
+	}
+
+	@Test
+	public void skipsLinks() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes)) {
+			TarArchiveEntry link = new TarArchiveEntry("passwd", TarConstants.LF_SYMLINK);
+			link.setLinkName("/etc/passwd");
+			tar.putArchiveEntry(link);
+			tar.closeArchiveEntry();
+			tarFile(tar, "real.txt", "real");
+		}
+		expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+
+		assertEquals(Collections.singleton("passwd"), recorder.skipped.keySet());
+		assertEquals(Collections.singleton("real.txt"), recorder.files.keySet());
+	}
+
+	@Test
+	public void smallEntriesGoToThePoolLargeEntriesAreStreamed() throws IOException {
+		byte[] large = new byte[MAX_ENTRY_BYTES * 4];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) i;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(bytes)) {
+			tarFile(tar, "small.txt", "small");
+			tarFile(tar, "large.bin", large);
+		}
+		expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+
+		assertTrue(recorder.threads.get("small.txt").startsWith("archive-upload-"));
+		assertEquals(Thread.currentThread().getName(), recorder.threads.get("large.bin"));
+		assertEquals(Long.valueOf(large.length), recorder.sizes.get("large.bin"));
+		assertArrayEquals(large, recorder.files.get("large.bin"));
+	}
+
+	@Test
+	public void largeEntryOfUnknownSizeIsStreamed() throws IOException {
+		byte[] large = new byte[MAX_ENTRY_BYTES * 3 + 1];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) (i * 7);
+		}
+		// Written to a plain stream, the sizes only follow the data in a data descriptor
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(bytes)) {
+			zip.putArchiveEntry(new ZipArchiveEntry("large.bin"));
+			zip.write(large);
+			zip.closeArchiveEntry();
+		}
+		expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+
+		assertEquals(Long.valueOf(-1), recorder.sizes.get("large.bin"));
+		assertEquals(Thread.currentThread().getName(), recorder.threads.get("large.bin"));
+		assertArrayEquals(large, recorder.files.get("large.bin"));
+	}
+
+	@Test
+	public void handlerFailureIsReportedAfterTheOtherEntries() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(bytes)) {
+			zipFile(zip, "bad.txt", "bad");
+			zipFile(zip, "good.txt", "good");
+		}
+		Recorder failing = new Recorder() {
+			@Override
+			public void file(String path, InputStream content, long size) throws IOException {
+				if ("bad.txt".equals(path)) {
+					throw new IOException("upload failed");
+				}
+				super.file(path, content, size);
+			}
+		};
+		try {
+			expander.expand(new ByteArrayInputStream(bytes.toByteArray()), failing);
+			fail("The handler failure should be thrown");
+		} catch (IOException e) {
+			assertEquals("upload failed", e.getMessage());
+		}
+		assertEquals("good", failing.text("good.txt"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOtherFormats() throws IOException {
+		expander.expand(new ByteArrayInputStream("just some text, not an archive".getBytes(StandardCharsets.UTF_8)), recorder);
+	}
+
+	@Test
+	public void leavesTheCallerStreamOpen() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(bytes)) {
+			zipFile(zip, "a.txt", "a");
+		}
+		boolean[] closed = new boolean[1];
+		InputStream in = new ByteArrayInputStream(bytes.toByteArray()) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		expander.expand(in, recorder);
+		assertFalse(closed[0]);
+	}
+
+	@Test
+	public void tooManyEntriesStopTheExpansion() throws IOException {
+		expander.maxEntries = 3;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(bytes)) {
+			for (int i = 0; i < 10; i++) {
+				zipFile(zip, "f" + i + ".txt", "x");
+			}
+		}
+		try {
+			expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+			fail("The entry limit should stop the expansion");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Archive has more than 3 entries", e.getMessage());
+		}
+		assertEquals(3, recorder.files.size());
+	}
+
+	@Test
+	public void tooMuchDataStopsTheExpansion() throws IOException {
+		expander.maxTotalBytes = MAX_ENTRY_BYTES * 3;
+		byte[] large = new byte[MAX_ENTRY_BYTES * 2];
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+			tarFile(tar, "small.txt", "small");
+			tarFile(tar, "first.bin", large);
+			tarFile(tar, "second.bin", large);
+			tarFile(tar, "after.txt", "after");
+		}
+		try {
+			expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+			fail("The data limit should stop the expansion");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Archive expands to more than " + MAX_ENTRY_BYTES * 3 + " bytes", e.getMessage());
+		}
+		assertArrayEquals(large, recorder.files.get("first.bin"));
+		assertFalse(recorder.files.containsKey("after.txt"));
+	}
+
+	@Test
+	public void dataOfRejectedEntriesCountsToo() throws IOException {
+		// Compresses to a few hundred bytes
+		byte[] zeros = new byte[4 * 1024 * 1024];
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new BZip2CompressorOutputStream(bytes))) {
+			tarFile(tar, "../bomb.bin", zeros);
+			tarFile(tar, "after.txt", "after");
+		}
+		try {
+			expander.expand(new ByteArrayInputStream(bytes.toByteArray()), recorder);
+			fail("The data limit should stop the expansion");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Archive expands to more than " + 1024 * 1024 + " bytes", e.getMessage());
+		}
+		assertEquals(Collections.singleton("../bomb.bin"), recorder.rejected.keySet());
+		assertTrue(recorder.files.isEmpty());
+	}
+
+	private static void zipFolder(ZipArchiveOutputStream zip, String name) throws IOException {
+		zip.putArchiveEntry(new ZipArchiveEntry(name));
+		zip.closeArchiveEntry();
+	}
+
+	private static void zipFile(ZipArchiveOutputStream zip, String name, String content) throws IOException {
+		zip.putArchiveEntry(new ZipArchiveEntry(name));
+		zip.write(content.getBytes(StandardCharsets.UTF_8));
+		zip.closeArchiveEntry();
+	}
+
+	private static void tarFile(TarArchiveOutputStream tar, String name, String content) throws IOException {
+		tarFile(tar, name, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void tarFile(TarArchiveOutputStream tar, String name, byte[] content) throws IOException {
+		TarArchiveEntry entry = new TarArchiveEntry(name);
+		entry.setSize(content.length);
+		tar.putArchiveEntry(entry);
+		tar.write(content);
+		tar.closeArchiveEntry();
+	}
+
+	private static List<String> list(String... values) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, values);
+		return list;
+	}
+
+	private static List<String> sorted(Iterable<String> values) {
+		List<String> list = new ArrayList<String>();
+		for (String value : values) {
+			list.add(value);
+		}
+		Collections.sort(list);
+		return list;
+	}
+
+	private static class Recorder implements ArchiveExpander.EntryHandler {
+		final List<String> folders = Collections.synchronizedList(new ArrayList<String>());
+		final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+		final Map<String, Long> sizes = new ConcurrentHashMap<String, Long>();
+		final Map<String, String> threads = new ConcurrentHashMap<String, String>();
+		final Map<String, String> rejected = new ConcurrentHashMap<String, String>();
+		final Map<String, String> skipped = new ConcurrentHashMap<String, String>();
+
+		@Override
+		public void folder(String path) {
+			folders.add(path);
+		}
+
+		@Override
+		public void file(String path, InputStream content, long size) throws IOException {
+			files.put(path, IOUtils.toByteArray(content));
+			sizes.put(path, size);
+			threads.put(path, Thread.currentThread().getName());
+		}
+
+		@Override
+		public void rejected(String name, String reason) {
+			rejected.put(name, reason);
+		}
+
+		@Override
+		public void skipped(String name, String reason) {
+			skipped.put(name, reason);
+		}
+
+		String text(String path) {
+			return new String(files.get(path), StandardCharsets.UTF_8);
+		}
+	}
+}
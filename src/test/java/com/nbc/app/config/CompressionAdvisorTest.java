@@ -0,0 +1,147 @@
+package com.nbc.app.config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.nbc.app.config.CompressionAdvisor.Decision;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class CompressionAdvisorTest {
+
+	private static final int MIN_SIZE = 1024;
+
+	private CompressionAdvisor advisor;
+
+	@Before
+	public void setUp() {
+		advisor = new CompressionAdvisor();
+		advisor.enabled = true;
+		advisor.minSize = MIN_SIZE;
+		advisor.sampleSize = 4096;
+		advisor.maxRatio = 0.9;
+		advisor.textSampleInterval = 4;
+		advisor.maxTrackedTypes = 3;
+		advisor.incompressibleTypes = new String[] { "application/zip", "image/" };
+		advisor.textTypes = new String[] { "text/", "application/json" };
+		advisor.init();
+	}
+
+	@Test
+	public void smallFilesAreNotCompressed() throws IOException {
+		InputStream content = stream(repetitive(MIN_SIZE - 1));
+		Decision decision = advisor.decide("application/octet-stream", MIN_SIZE - 1, content);
+		assertFalse(decision.isCompress());
+		assertSame(content, decision.getStream());
+	}
+
+	@Test
+	public void compressedFormatsAreNeverCompressed() throws IOException {
+		assertFalse(advisor.decide("application/zip", 10000, stream(repetitive(10000))).isCompress());
+		assertFalse(advisor.decide("image/png", 10000, stream(repetitive(10000))).isCompress());
+		assertNull(metric("image_png.ratio"));
+	}
+
+	@Test
+	public void textIsAlwaysCompressedAndSampledNowAndThen() throws IOException {
+		byte[] random = random(10000);
+		for (int i = 0; i < 5; i++) {
+			// Even content that does not compress, the type decides
+			Decision decision = advisor.decide("text/plain; charset=UTF-8", random.length, stream(random));
+			assertTrue(decision.isCompress());
+			assertArrayEquals(random, IOUtils.toByteArray(decision.getStream()));
+		}
+		assertEquals(5L, metric("text_plain.compressed"));
+		// The first and the fifth upload were sampled
+		assertEquals(2L * 4096, metric("text_plain.sampledBytes"));
+		assertTrue((Double) metric("text_plain.ratio") > 0.9);
+		assertNotNull(metric("text_plain.cpuNanosPerByte"));
+	}
+
+	@Test
+	public void otherTypesAreDecidedBySample() throws IOException {
+		byte[] repetitive = repetitive(10000);
+		Decision compressible = advisor.decide("application/octet-stream", repetitive.length, stream(repetitive));
+		assertTrue(compressible.isCompress());
+		assertArrayEquals(repetitive, IOUtils.toByteArray(compressible.getStream()));
+
+		byte[] random = random(10000);
+		Decision incompressible = advisor.decide("application/octet-stream", random.length, stream(random));
+		assertFalse(incompressible.isCompress());
+		assertArrayEquals(random, IOUtils.toByteArray(incompressible.getStream()));
+	}
+
+	@Test
+	public void disabledNeverCompresses() throws IOException {
+		advisor.enabled = false;
+		assertFalse(advisor.decide("text/plain", 10000, stream(repetitive(10000))).isCompress());
+	}
+
+	@Test
+	public void trackedTypesAreBounded() throws IOException {
+		advisor.decide("text/plain;charset=UTF-8", 10, stream(new byte[10]));
+		advisor.decide("TEXT/PLAIN", 10, stream(new byte[10]));
+		advisor.decide("not a type", 10, stream(new byte[10]));
+		for (int i = 0; i < 10; i++) {
+			advisor.decide("application/x-" + i, 10, stream(new byte[10]));
+		}
+
+		Set<String> types = new HashSet<String>();
+		for (Metric<?> metric : advisor.metrics()) {
+			String name = metric.getName().substring("alfresco.compression.".length());
+			types.add(name.substring(0, name.lastIndexOf('.')));
+		}
+		assertTrue(types.contains("text_plain"));
+		assertTrue(types.contains("other"));
+		assertTrue(types.size() <= 4);
+		assertEquals(2L, metric("text_plain.uploads"));
+	}
+
+	private Object metric(String name) {
+		for (Metric<?> metric : advisor.metrics()) {
+			if (metric.getName().equals("alfresco.compression." + name)) {
+				return metric.getValue();
+			}
+		}
+		return null;
+	}
+
+	private static InputStream stream(byte[] content) {
+		return new ByteArrayInputStream(content);
+	}
+
+	private static byte[] repetitive(int length) {
+		byte[] line = "build 42 passed, 0 failures\n".getBytes(StandardCharsets.UTF_8);
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = line[i % line.length];
+		}
+		return content;
+	}
+
+	private static byte[] random(int length) {
+		byte[] content = new byte[length];
+		new Random(42).nextBytes(content);
+		return content;
+	}
+}
@@ -0,0 +1,131 @@
+package com.nbc.app.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class ConnectionRouterTest {
+
+	private ConnectionRouter router;
+
+	@Before
+	public void setUp() {
+		AlfrescoConnectionProperties properties = new AlfrescoConnectionProperties();
+		properties.setConnectionName("main");
+		properties.setUrl("http://localhost/alfresco");
+		properties.getProfiles().put("reports", profile(2, 100));
+		properties.getProfiles().put("archive", profile(1, 50));
+		properties.getRoutes().add(route(null, "/CI", "reports"));
+		properties.getRoutes().add(route(null, "/CI/Archive", "archive"));
+		properties.getRoutes().add(route("acme", null, "archive"));
+		router = new ConnectionRouter();
+		router.properties = properties;
+		router.init();
+	}
+
+	@Test
+	public void longestPathPrefixWins() {
+		assertEquals("reports", router.resolve(null, "/CI").getName());
+		assertEquals("reports", router.resolve(null, "/CI/Builds/T-1").getName());
+		assertEquals("archive", router.resolve(null, "/CI/Archive/T-1").getName());
+	}
+
+	@Test
+	public void prefixMatchesWholeSegmentsOnly() {
+		assertEquals("main", router.resolve(null, "/CIX").getName());
+		assertEquals("reports", router.resolve(null, "/CI/ArchiveX").getName());
+	}
+
+	@Test
+	public void tenantRouteWinsOverPathRoute() {
+		assertEquals("archive", router.resolve("acme", "/CI/Builds").getName());
+	}
+
+	@Test
+	public void unknownTenantFallsBackToPathThenDefault() {
+		assertEquals("reports", router.resolve("unknown", "/CI/Builds").getName());
+		assertEquals("main", router.resolve("unknown", "/Other").getName());
+		assertEquals("main", router.resolve(null, null).getName());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void routeToUnknownProfileIsRejected() {
+		AlfrescoConnectionProperties properties = new AlfrescoConnectionProperties();
+		properties.getRoutes().add(route("acme", null, "missing"));
+		ConnectionRouter broken = new ConnectionRouter();
+		broken.properties = properties;
+		broken.init();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void profileNamedLikeTheDefaultIsRejected() {
+		AlfrescoConnectionProperties properties = new AlfrescoConnectionProperties();
+		properties.setConnectionName("main");
+		properties.getProfiles().put("main", profile(2, 100));
+		ConnectionRouter broken = new ConnectionRouter();
+		broken.properties = properties;
+		broken.init();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void profileNamedLikeTheUnnamedDefaultIsRejected() {
+		AlfrescoConnectionProperties properties = new AlfrescoConnectionProperties();
+		properties.getProfiles().put(ConnectionRouter.DEFAULT_PROFILE, profile(2, 100));
+		ConnectionRouter broken = new ConnectionRouter();
+		broken.properties = properties;
+		broken.init();
+	}
+
+	@Test
+	public void acquireTimesOutWhenAllSlotsAreBusy() {
+		ConnectionProfile archive = router.resolve("acme", null);
+		router.acquire(archive);
+		long start = System.nanoTime();
+		try {
+			router.acquire(archive);
+			fail("Second acquire should time out");
+		} catch (CmisConnectionException e) {
+			assertTrue(e.getMessage().contains("archive"));
+		}
+		assertTrue(System.nanoTime() - start >= 40_000_000L);
+
+		router.release(archive);
+		router.acquire(archive);
+		router.release(archive);
+	}
+
+	@Test
+	public void profilesHaveSeparateLimits() {
+		ConnectionProfile archive = router.resolve("acme", null);
+		ConnectionProfile reports = router.resolve(null, "/CI");
+		router.acquire(archive);
+		router.acquire(reports);
+		router.acquire(reports);
+		router.release(reports);
+		router.release(reports);
+		router.release(archive);
+	}
+
+	private static ConnectionProfile profile(int maxConcurrentRequests, long acquireTimeoutMillis) {
+		ConnectionProfile profile = new ConnectionProfile();
+		profile.setMaxConcurrentRequests(maxConcurrentRequests);
+		profile.setAcquireTimeoutMillis(acquireTimeoutMillis);
+		return profile;
+	}
+
+	private static ConnectionRoute route(String tenant, String pathPrefix, String profile) {
+		ConnectionRoute route = new ConnectionRoute();
+		route.setTenant(tenant);
+		route.setPathPrefix(pathPrefix);
+		route.setProfile(profile);
+		return route;
+	}
+}
@@ -0,0 +1,297 @@
+package com.nbc.app.config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class DownloadCoalescerTest {
+
+	private static final byte[] CONTENT = content(200_000);
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private DownloadCoalescer coalescer;
+	private AtomicInteger opens;
+
+	@Before
+	public void setUp() throws IOException {
+		coalescer = coalescer(CONTENT.length * 2L);
+		opens = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() {
+		coalescer.destroy();
+	}
+
+	@Test
+	public void concurrentReadersShareOneDownload() throws Exception {
+		GatedStream upstream = new GatedStream(CONTENT, CONTENT.length / 2, -1);
+		InputStream first = coalescer.open("doc", CONTENT.length, counting(upstream));
+		byte[] head = new byte[1000];
+		IOUtils.readFully(first, head);
+		InputStream second = coalescer.open("doc", CONTENT.length, counting(upstream));
+		InputStream third = coalescer.open("doc", CONTENT.length, counting(upstream));
+		upstream.open.countDown();
+
+		assertArrayEquals(CONTENT, concat(head, IOUtils.toByteArray(first)));
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(second));
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(third));
+		first.close();
+		second.close();
+		third.close();
+
+		assertEquals(1, opens.get());
+		assertEquals(1L, metric("started"));
+		assertEquals(2L, metric("joined"));
+		assertEquals((long) CONTENT.length, metric("upstreamBytes"));
+	}
+
+	@Test
+	public void spoolFileIsDeletedAfterTheLastReader() throws Exception {
+		InputStream first = coalescer.open("doc", CONTENT.length, counting(new ByteArrayInputStream(CONTENT)));
+		InputStream second = coalescer.open("doc", CONTENT.length, counting(new ByteArrayInputStream(CONTENT)));
+		IOUtils.toByteArray(first);
+		first.close();
+		assertEquals(1, spoolFiles());
+
+		IOUtils.toByteArray(second);
+		second.close();
+		assertEquals(0, spoolFiles());
+		assertEquals(0L, metric("spooledBytes"));
+		assertEquals(0, metric("active"));
+
+		// The next request for the key downloads again
+		InputStream again = coalescer.open("doc", CONTENT.length, counting(new ByteArrayInputStream(CONTENT)));
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(again));
+		again.close();
+		assertEquals(2, opens.get());
+	}
+
+	@Test
+	public void readersJoinARunningDownloadWhenTheSpoolIsFull() throws Exception {
+		coalescer.destroy();
+		coalescer = coalescer(CONTENT.length);
+		GatedStream upstream = new GatedStream(CONTENT, 0, -1);
+		InputStream first = coalescer.open("doc", CONTENT.length, counting(upstream));
+		InputStream second = coalescer.open("doc", CONTENT.length, counting(upstream));
+		InputStream other = coalescer.open("other", CONTENT.length, counting(new ByteArrayInputStream(CONTENT)));
+		upstream.open.countDown();
+
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(second));
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(other));
+		first.close();
+		second.close();
+		other.close();
+
+		assertEquals(1L, metric("joined"));
+		assertEquals(1L, metric("bypassed"));
+		assertEquals(0L, metric("spooledBytes"));
+	}
+
+	@Test
+	public void contentOfUnknownLengthIsNotSpooled() throws IOException {
+		InputStream upstream = new ByteArrayInputStream(CONTENT);
+		assertSame(upstream, coalescer.open("doc", -1, counting(upstream)));
+		assertEquals(1L, metric("bypassed"));
+		assertEquals(0, spoolFiles());
+	}
+
+	@Test
+	public void failureToOpenTheUpstreamReleasesTheReservation() throws IOException {
+		try {
+			coalescer.open("doc", CONTENT.length, () -> {
+				throw new IOException("repository down");
+			});
+			fail("The upstream failure should be thrown");
+		} catch (IOException e) {
+			assertEquals("repository down", e.getMessage());
+		}
+		assertEquals(0L, metric("spooledBytes"));
+		assertEquals(0, metric("active"));
+		assertEquals(0, spoolFiles());
+
+		InputStream retry = coalescer.open("doc", CONTENT.length, counting(new ByteArrayInputStream(CONTENT)));
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(retry));
+		retry.close();
+	}
+
+	@Test
+	public void upstreamFailureReachesEveryReader() throws Exception {
+		GatedStream upstream = new GatedStream(CONTENT, 0, CONTENT.length / 2);
+		InputStream first = coalescer.open("doc", CONTENT.length, counting(upstream));
+		InputStream second = coalescer.open("doc", CONTENT.length, counting(upstream));
+		upstream.open.countDown();
+
+		assertReadFails(first);
+		assertReadFails(second);
+		first.close();
+		second.close();
+
+		assertEquals(0L, metric("spooledBytes"));
+		assertEquals(0, metric("active"));
+		assertEquals(0, spoolFiles());
+	}
+
+	@Test
+	public void downloadStopsWhenEveryReaderLeaves() throws Exception {
+		GatedStream upstream = new GatedStream(CONTENT, 0, -1);
+		InputStream reader = coalescer.open("doc", CONTENT.length, counting(upstream));
+		reader.close();
+		upstream.open.countDown();
+
+		assertTrue(upstream.closed.await(5, TimeUnit.SECONDS));
+		// The pump releases the flight right after closing the upstream
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!Long.valueOf(0).equals(metric("spooledBytes")) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0L, metric("spooledBytes"));
+		assertEquals(0, spoolFiles());
+	}
+
+	@Test
+	public void instancesUseTheirOwnDirectory() throws IOException {
+		DownloadCoalescer other = coalescer(CONTENT.length);
+		File[] directories = temporaryFolder.getRoot().listFiles();
+		assertEquals(2, directories.length);
+
+		other.destroy();
+		directories = temporaryFolder.getRoot().listFiles();
+		assertEquals(1, directories.length);
+		assertTrue(directories[0].isDirectory());
+		assertEquals(0, directories[0].list().length);
+	}
+
+	private DownloadCoalescer coalescer(long maxSpoolBytes) throws IOException {
+		DownloadCoalescer coalescer = new DownloadCoalescer();
+		coalescer.spoolDir = temporaryFolder.getRoot().getPath();
+		coalescer.maxSpoolBytes = maxSpoolBytes;
+		coalescer.init();
+		return coalescer;
+	}
+
+	private DownloadCoalescer.Upstream counting(InputStream stream) {
+		return () -> {
+			opens.incrementAndGet();
+			return stream;
+		};
+	}
+
+	private Object metric(String name) {
+		for (Metric<?> metric : coalescer.metrics()) {
+			if (metric.getName().equals("alfresco.downloads." + name)) {
+				return metric.getValue();
+			}
+		}
+		throw new AssertionError("No metric " + name);
+	}
+
+	private int spoolFiles() {
+		int count = 0;
+		for (File directory : temporaryFolder.getRoot().listFiles()) {
+			count += directory.list().length;
+		}
+		return count;
+	}
+
+	private static void assertReadFails(InputStream reader) {
+		try {
+			IOUtils.toByteArray(reader);
+			fail("The upstream failure should reach the reader");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("doc"));
+		}
+	}
+
+	private static byte[] content(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i * 31);
+		}
+		return content;
+	}
+
+	private static byte[] concat(byte[] head, byte[] tail) {
+		byte[] all = new byte[head.length + tail.length];
+		System.arraycopy(head, 0, all, 0, head.length);
+		System.arraycopy(tail, 0, all, head.length, tail.length);
+		return all;
+	}
+
+	/*
+	 * Upstream that serves the bytes before the gate at once, waits for the latch before the rest
+	 * and fails at a position if one is given.
+	 */
+	private static class GatedStream extends InputStream {
+		final CountDownLatch open = new CountDownLatch(1);
+		final CountDownLatch closed = new CountDownLatch(1);
+		private final byte[] content;
+		private final int gate;
+		private final int failAt;
+		private int position;
+
+		GatedStream(byte[] content, int gate, int failAt) {
+			this.content = content;
+			this.gate = gate;
+			this.failAt = failAt;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= gate) {
+				try {
+					open.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted");
+				}
+			}
+			if (failAt >= 0 && position >= failAt) {
+				throw new IOException("connection reset");
+			}
+			if (position >= content.length) {
+				return -1;
+			}
+			int limit = position < gate ? gate : failAt >= 0 ? failAt : content.length;
+			int count = Math.min(len, Math.min(limit, content.length) - position);
+			System.arraycopy(content, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+		}
+	}
+}
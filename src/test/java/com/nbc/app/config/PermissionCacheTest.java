@@ -0,0 +1,130 @@
+package com.nbc.app.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.AllowableActions;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.enums.Action;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class PermissionCacheTest {
+
+	private PermissionCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new PermissionCache();
+		cache.ttlMillis = 60000;
+		cache.maxEntries = 100;
+	}
+
+	@Test
+	public void cachedPermissionsAreReturnedUntilTheyExpire() throws InterruptedException {
+		Session session = session("reports", "repo");
+		cache.put(session, "/CI/T1", folder("1", Action.CAN_CREATE_DOCUMENT));
+
+		PermissionCache.Permissions cached = cache.get(session, "/CI/T1");
+		assertNotNull(cached);
+		assertEquals("1", cached.getObjectId());
+		assertTrue(cached.allows(Action.CAN_CREATE_DOCUMENT));
+		assertFalse(cached.allows(Action.CAN_DELETE_TREE));
+
+		cache.ttlMillis = 20;
+		cache.put(session, "/CI/T2", folder("2", Action.CAN_CREATE_DOCUMENT));
+		Thread.sleep(50);
+		assertNull(cache.get(session, "/CI/T2"));
+		assertNotNull(cache.get(session, "/CI/T1"));
+	}
+
+	@Test
+	public void invalidateRemovesThePathAndEverythingBelowIt() {
+		Session session = session("reports", "repo");
+		cache.put(session, "/CI", folder("1"));
+		cache.put(session, "/CI/T1", folder("2"));
+		cache.put(session, "/CI/T1/logs", folder("3"));
+		cache.put(session, "/CI/T10", folder("4"));
+
+		cache.invalidate("/CI/T1");
+
+		assertNotNull(cache.get(session, "/CI"));
+		assertNull(cache.get(session, "/CI/T1"));
+		assertNull(cache.get(session, "/CI/T1/logs"));
+		// Same prefix but another folder
+		assertNotNull(cache.get(session, "/CI/T10"));
+	}
+
+	@Test
+	public void entriesAreKeptPerProfileAndRepository() {
+		Session reports = session("reports", "repo");
+		Session archive = session("archive", "repo");
+		Session otherRepository = session("reports", "other");
+		cache.put(reports, "/CI/T1", folder("1", Action.CAN_CREATE_DOCUMENT));
+
+		assertNotNull(cache.get(reports, "/CI/T1"));
+		assertNull(cache.get(archive, "/CI/T1"));
+		assertNull(cache.get(otherRepository, "/CI/T1"));
+
+		// The same object seen by another service account has its own permissions
+		cache.put(archive, "/CI/T1", folder("1"));
+		assertTrue(cache.get(reports, "/CI/T1").allows(Action.CAN_CREATE_DOCUMENT));
+		assertFalse(cache.get(archive, "/CI/T1").allows(Action.CAN_CREATE_DOCUMENT));
+	}
+
+	@Test
+	public void missingAllowableActionsGrantNothing() {
+		Session session = session("reports", "repo");
+		CmisObject object = mock(CmisObject.class);
+		when(object.getId()).thenReturn("1");
+		cache.put(session, "/CI", object);
+		assertFalse(cache.get(session, "/CI").allows(Action.CAN_CREATE_DOCUMENT));
+	}
+
+	@Test
+	public void fullCacheStartsOver() {
+		cache.maxEntries = 2;
+		Session session = session("reports", "repo");
+		cache.put(session, "/A", folder("1"));
+		cache.put(session, "/B", folder("2"));
+		cache.put(session, "/C", folder("3"));
+		assertNull(cache.get(session, "/A"));
+		assertNotNull(cache.get(session, "/C"));
+	}
+
+	static Session session(String profile, String repositoryId) {
+		Session session = mock(Session.class);
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(AlfrescoClient.PROFILE_PARAMETER, profile);
+		when(session.getSessionParameters()).thenReturn(parameters);
+		RepositoryInfo repositoryInfo = mock(RepositoryInfo.class);
+		when(repositoryInfo.getId()).thenReturn(repositoryId);
+		when(session.getRepositoryInfo()).thenReturn(repositoryInfo);
+		return session;
+	}
+
+	static CmisObject folder(String id, Action... actions) {
+		CmisObject folder = mock(CmisObject.class);
+		when(folder.getId()).thenReturn(id);
+		AllowableActions allowableActions = mock(AllowableActions.class);
+		when(allowableActions.getAllowableActions()).thenReturn(actions.length == 0 ? EnumSet.noneOf(Action.class)
+				: EnumSet.of(actions[0], actions));
+		when(folder.getAllowableActions()).thenReturn(allowableActions);
+		return folder;
+	}
+}
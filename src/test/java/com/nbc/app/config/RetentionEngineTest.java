@@ -0,0 +1,230 @@
+package com.nbc.app.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.enums.UnfileObject;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.nbc.app.config.RetentionEngine.Checkpoint;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class RetentionEngineTest {
+
+	private static final String PATH = "/CI";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private RetentionEngine engine;
+	private RetentionProperties properties;
+	private AlfrescoClient client;
+	private Session session;
+	private File checkpointFile;
+	private final List<CmisObject> repository = new ArrayList<CmisObject>();
+
+	@Before
+	public void setUp() {
+		AlfrescoConnectionProperties connections = new AlfrescoConnectionProperties();
+		ConnectionRouter router = new ConnectionRouter();
+		router.properties = connections;
+		router.init();
+
+		RetentionPolicy policy = new RetentionPolicy();
+		policy.setPath(PATH);
+		policy.setMaxAgeDays(1);
+		checkpointFile = new File(temporaryFolder.getRoot(), "retention.properties");
+		properties = new RetentionProperties();
+		properties.setEnabled(true);
+		properties.setBatchSize(2);
+		properties.setDeletesPerMinute(0);
+		properties.setCheckpointFile(checkpointFile.getPath());
+		properties.getPolicies().add(policy);
+
+		client = mock(AlfrescoClient.class);
+		session = mock(Session.class);
+		when(client.getSession(any(ConnectionProfile.class))).thenReturn(session);
+		// Oldest first, from the given moment on, like the repository query
+		when(client.findFoldersCreatedBetween(eq(session), eq(PATH), any(Date.class), any(Date.class), anyInt()))
+				.thenAnswer(invocation -> {
+					Date from = (Date) invocation.getArguments()[2];
+					int maxItems = (Integer) invocation.getArguments()[4];
+					List<CmisObject> found = new ArrayList<CmisObject>();
+					for (CmisObject folder : repository) {
+						if ((from == null || !folder.getCreationDate().getTime().before(from)) && found.size() < maxItems) {
+							found.add(folder);
+						}
+					}
+					return found;
+				});
+
+		engine = new RetentionEngine();
+		engine.properties = properties;
+		engine.alfrescoClient = client;
+		engine.connectionRouter = router;
+		// Not the deleting instance, nothing runs in the background, the test calls run()
+		engine.instanceIndex = 1;
+	}
+
+	@Test
+	public void checkpointSurvivesFormatAndParse() {
+		Checkpoint checkpoint = new Checkpoint(new Date(1500000000123L), new LinkedHashSet<String>(Arrays.asList("a", "b;1.0")));
+		Checkpoint parsed = Checkpoint.parse(checkpoint.toString());
+		assertEquals(checkpoint.created, parsed.created);
+		assertEquals(Arrays.asList("a", "b;1.0"), new ArrayList<String>(parsed.ids));
+
+		Checkpoint dateOnly = Checkpoint.parse(" 1500000000123 ");
+		assertEquals(new Date(1500000000123L), dateOnly.created);
+		assertTrue(dateOnly.ids.isEmpty());
+		assertNull(Checkpoint.parse(null));
+		assertNull(Checkpoint.parse(" "));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void checkpointThatIsNotOneIsRefused() {
+		Checkpoint.parse("yesterday a b");
+	}
+
+	@Test
+	public void foldersCreatedAtTheSameMomentAreNeitherSkippedNorRepeatedAcrossBatches() throws IOException {
+		folder("f1", 1000);
+		folder("f2", 2000);
+		folder("f3", 2000);
+		folder("f4", 2000);
+		folder("f5", 3000);
+		// f2 can not be deleted and stays in the repository
+		doAnswer(invocation -> {
+			String path = (String) invocation.getArguments()[1];
+			if (path.endsWith("/f2")) {
+				throw new CmisRuntimeException("locked");
+			}
+			repository.removeIf(folder -> path.endsWith("/" + folder.getName()));
+			return null;
+		}).when(client).deleteFolder(eq(session), anyString(), eq(UnfileObject.DELETE));
+		engine.init();
+
+		engine.run();
+		assertEquals("2000 f2", checkpoint());
+		engine.run();
+		assertEquals("2000 f2 f3 f4", checkpoint());
+		engine.run();
+		assertEquals("3000 f5", checkpoint());
+		engine.run();
+		assertNull(checkpoint());
+
+		for (String name : Arrays.asList("f1", "f2", "f3", "f4", "f5")) {
+			verify(client, times(1)).deleteFolder(session, PATH + "/" + name, UnfileObject.DELETE);
+		}
+		assertEquals(4L, metric("deleted"));
+		assertEquals(1L, metric("failed"));
+		assertEquals(1L, metric("passes"));
+	}
+
+	@Test
+	public void unreadableCheckpointStartsOverFromTheOldestFolder() throws IOException {
+		Properties stored = new Properties();
+		stored.setProperty(PATH, "garbage f9");
+		try (OutputStream out = new FileOutputStream(checkpointFile)) {
+			stored.store(out, null);
+		}
+		folder("f1", 1000);
+		engine.init();
+
+		engine.run();
+		verify(client).findFoldersCreatedBetween(eq(session), eq(PATH), isNull(Date.class), any(Date.class), eq(2));
+		verify(client).deleteFolder(session, PATH + "/f1", UnfileObject.DELETE);
+		assertEquals("1000 f1", checkpoint());
+	}
+
+	@Test
+	public void windowWrapsPastMidnight() throws IOException {
+		properties.setEnabled(false);
+		properties.setWindow("22:00-02:00");
+		engine.init();
+
+		assertTrue(engine.inWindow(LocalTime.of(22, 0)));
+		assertTrue(engine.inWindow(LocalTime.of(23, 59, 59)));
+		assertTrue(engine.inWindow(LocalTime.MIDNIGHT));
+		assertTrue(engine.inWindow(LocalTime.of(1, 59, 59)));
+		assertFalse(engine.inWindow(LocalTime.of(2, 0)));
+		assertFalse(engine.inWindow(LocalTime.of(21, 59, 59)));
+		assertFalse(engine.inWindow(LocalTime.NOON));
+	}
+
+	@Test
+	public void windowWithinOneDay() throws IOException {
+		properties.setEnabled(false);
+		properties.setWindow("01:00-05:00");
+		engine.init();
+
+		assertFalse(engine.inWindow(LocalTime.MIDNIGHT));
+		assertTrue(engine.inWindow(LocalTime.of(1, 0)));
+		assertTrue(engine.inWindow(LocalTime.of(4, 59, 59)));
+		assertFalse(engine.inWindow(LocalTime.of(5, 0)));
+		assertFalse(engine.inWindow(LocalTime.of(23, 0)));
+	}
+
+	private void folder(String name, long created) {
+		CmisObject folder = mock(CmisObject.class);
+		when(folder.getId()).thenReturn(name);
+		when(folder.getName()).thenReturn(name);
+		GregorianCalendar creationDate = new GregorianCalendar();
+		creationDate.setTimeInMillis(created);
+		when(folder.getCreationDate()).thenReturn(creationDate);
+		repository.add(folder);
+	}
+
+	private String checkpoint() throws IOException {
+		Properties stored = new Properties();
+		try (InputStream in = new FileInputStream(checkpointFile)) {
+			stored.load(in);
+		}
+		return stored.getProperty(PATH);
+	}
+
+	private Object metric(String name) {
+		for (Metric<?> metric : engine.metrics()) {
+			if (metric.getName().equals("alfresco.retention." + name)) {
+				return metric.getValue();
+			}
+		}
+		return null;
+	}
+}
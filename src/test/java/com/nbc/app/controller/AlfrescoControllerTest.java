@@ -0,0 +1,211 @@
+package com.nbc.app.controller;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.fileUpload;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.nbc.app.domain.BulkUpdateRequest;
+import com.nbc.app.domain.BulkUpdateResult;
+import com.nbc.app.domain.DocumentContent;
+import com.nbc.app.domain.ManifestRequest;
+import com.nbc.app.domain.ManifestResult;
+import com.nbc.app.domain.UploadResult;
+import com.nbc.app.service.AlfrescoService;
+import com.nbc.app.service.AlfrescoServiceImpl;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class AlfrescoControllerTest {
+
+	private static final MockMultipartFile FILE = new MockMultipartFile("files", "a.txt", "text/plain",
+			"a".getBytes(StandardCharsets.UTF_8));
+
+	private AlfrescoService service;
+	private MockMvc mvc;
+
+	@Before
+	public void setUp() {
+		service = mock(AlfrescoService.class);
+		mvc = mvc(service);
+	}
+
+	@Test
+	public void skipModeUploadsEveryFile() throws Exception {
+		when(service.uploadFolderToAlfresco(any(MultipartFile.class), eq("T1"), eq("/CI"), isNull(String.class)))
+				.thenReturn(new UploadResult("a.txt", "1", UploadResult.CREATED, null));
+
+		mvc.perform(fileUpload("/processData").file(FILE).param("ticketNumber", "T1").param("folderPath", "/CI"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].name").value("a.txt"))
+				.andExpect(jsonPath("$[0].status").value(UploadResult.CREATED));
+	}
+
+	@Test
+	public void versionModeUploadsTheGroup() throws Exception {
+		when(service.uploadVersionsToAlfresco(any(MultipartFile[].class), eq("T1"), eq("/CI"), isNull(String.class),
+				eq(false), eq("nightly"))).thenReturn(Collections.singletonList(
+						new UploadResult("a.txt", "1;1.1", UploadResult.VERSIONED, null)));
+
+		mvc.perform(fileUpload("/processData").file(FILE).param("ticketNumber", "T1").param("folderPath", "/CI")
+				.param("uploadMode", "version").param("versioning", "MINOR").param("comment", "nightly"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].status").value(UploadResult.VERSIONED));
+	}
+
+	@Test
+	public void archiveModeExpandsEveryFile() throws Exception {
+		when(service.uploadArchiveToAlfresco(any(MultipartFile.class), eq("T1"), eq("/CI"), isNull(String.class)))
+				.thenReturn(Arrays.asList(new UploadResult("docs/a.txt", "1", UploadResult.CREATED, null)));
+
+		mvc.perform(fileUpload("/processData").file(FILE).param("ticketNumber", "T1").param("folderPath", "/CI")
+				.param("uploadMode", "ARCHIVE"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].name").value("docs/a.txt"));
+	}
+
+	@Test
+	public void invalidUploadRequestsAreBadRequests() throws Exception {
+		mvc.perform(fileUpload("/processData").file(FILE).param("ticketNumber", "T1").param("folderPath", "/CI")
+				.param("uploadMode", "REPLACE"))
+				.andExpect(status().isBadRequest());
+		mvc.perform(fileUpload("/processData").file(FILE).param("ticketNumber", "T1").param("folderPath", "/CI")
+				.param("uploadMode", "VERSION").param("versioning", "PATCH"))
+				.andExpect(status().isBadRequest());
+
+		when(service.uploadArchiveToAlfresco(any(MultipartFile.class), anyString(), anyString(), isNull(String.class)))
+				.thenThrow(new IllegalArgumentException("Not a ZIP or TAR archive"));
+		mvc.perform(fileUpload("/processData").file(FILE).param("ticketNumber", "T1").param("folderPath", "/CI")
+				.param("uploadMode", "ARCHIVE"))
+				.andExpect(status().isBadRequest())
+				.andExpect(status().reason("Not a ZIP or TAR archive"));
+	}
+
+	@Test
+	public void bulkUpdateReturnsAResultPerReference() throws Exception {
+		when(service.bulkUpdateProperties(any(BulkUpdateRequest.class))).thenReturn(Arrays.asList(
+				new BulkUpdateResult("1", "1", BulkUpdateResult.UPDATED, null),
+				new BulkUpdateResult("/CI/T1/a.txt", null, BulkUpdateResult.FAILED, "not found")));
+
+		mvc.perform(post("/bulkUpdate").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"objectIds\":[\"1\"],\"paths\":[\"/CI/T1/a.txt\"],\"properties\":{\"cmis:description\":\"x\"}}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].status").value(BulkUpdateResult.UPDATED))
+				.andExpect(jsonPath("$[1].status").value(BulkUpdateResult.FAILED));
+	}
+
+	@Test
+	public void bulkUpdateWithoutListsIsABadRequest() throws Exception {
+		// Validated by the service before it touches the repository
+		MockMvc validating = mvc(new AlfrescoServiceImpl());
+		validating.perform(post("/bulkUpdate").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"objectIds\":null,\"properties\":{\"cmis:description\":\"x\"}}"))
+				.andExpect(status().isBadRequest());
+		validating.perform(post("/bulkUpdate").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"objectIds\":[\"1\"]}"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void manifestReturnsTheFilesToUpload() throws Exception {
+		when(service.compareManifest(any(ManifestRequest.class))).thenReturn(Collections.singletonList(
+				new ManifestResult("a.txt", null, ManifestResult.NEW, null)));
+
+		mvc.perform(post("/manifest").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"ticketNumber\":\"T1\",\"folderPath\":\"/CI\",\"files\":[{\"name\":\"a.txt\",\"size\":1}]}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].status").value(ManifestResult.NEW));
+	}
+
+	@Test
+	public void incompleteManifestIsABadRequest() throws Exception {
+		MockMvc validating = mvc(new AlfrescoServiceImpl());
+		validating.perform(post("/manifest").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"ticketNumber\":\"T1\",\"folderPath\":\"/CI\",\"files\":null}"))
+				.andExpect(status().isBadRequest());
+		validating.perform(post("/manifest").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"ticketNumber\":\"T1\",\"folderPath\":\"/CI\",\"files\":[{\"size\":1}]}"))
+				.andExpect(status().isBadRequest());
+		validating.perform(post("/manifest").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"folderPath\":\"/CI\",\"files\":[]}"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void documentIsStreamedWithItsEtag() throws Exception {
+		when(service.getDocumentContent("/CI/T1", "a.txt", null, null)).thenReturn(new DocumentContent(
+				new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)), 5, "text/plain", "1-abc"));
+
+		mvc.perform(get("/document").param("folderPath", "/CI/T1").param("documentName", "a.txt"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"1-abc\""))
+				.andExpect(header().string("Content-Type", "text/plain"))
+				.andExpect(content().string("hello"));
+	}
+
+	@Test
+	public void documentNotModifiedOrMissing() throws Exception {
+		when(service.getDocumentContent("/CI/T1", "a.txt", null, "\"1-abc\"")).thenReturn(DocumentContent.notModified("1-abc"));
+		mvc.perform(get("/document").param("folderPath", "/CI/T1").param("documentName", "a.txt")
+				.header("If-None-Match", "\"1-abc\""))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string("ETag", "\"1-abc\""));
+
+		mvc.perform(get("/document").param("folderPath", "/CI/T1").param("documentName", "missing.txt"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void malformedMimeTypeFallsBackToOctetStream() throws Exception {
+		when(service.getDocumentContent("/CI/T1", "a.bin", null, null)).thenReturn(new DocumentContent(
+				new ByteArrayInputStream(new byte[] { 1 }), 1, "not a type", "1-abc"));
+
+		mvc.perform(get("/document").param("folderPath", "/CI/T1").param("documentName", "a.bin"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", MediaType.APPLICATION_OCTET_STREAM_VALUE));
+	}
+
+	@Test
+	public void renditionIsStreamedOrNotFound() throws Exception {
+		when(service.getRendition("/CI/T1", "a.pdf", "cmis:thumbnail", null, null)).thenReturn(new DocumentContent(
+				new ByteArrayInputStream(new byte[] { 1, 2 }), 2, "image/png", "r-1"));
+
+		mvc.perform(get("/rendition").param("folderPath", "/CI/T1").param("documentName", "a.pdf"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", "image/png"));
+		mvc.perform(get("/rendition").param("folderPath", "/CI/T1").param("documentName", "b.pdf"))
+				.andExpect(status().isNotFound());
+		verify(service).getRendition("/CI/T1", "b.pdf", "cmis:thumbnail", null, null);
+	}
+
+	private static MockMvc mvc(AlfrescoService service) {
+		AlfrescoController controller = new AlfrescoController();
+		controller.alfrescoService = service;
+		return MockMvcBuilders.standaloneSetup(controller).build();
+	}
+}
@@ -0,0 +1,204 @@
+package com.nbc.app.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.AllowableActions;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.enums.Action;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nbc.app.config.AlfrescoClient;
+import com.nbc.app.config.AlfrescoConnectionProperties;
+import com.nbc.app.config.ConnectionProfile;
+import com.nbc.app.config.ConnectionRoute;
+import com.nbc.app.config.ConnectionRouter;
+import com.nbc.app.config.DownloadCoalescer;
+import com.nbc.app.domain.DocumentContent;
+
+/**
+ * @author Ammar
+ * @version 1.0
+ */
+public class AlfrescoServiceImplTest {
+
+	private static final byte[] CONTENT = new byte[100_000];
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private AlfrescoServiceImpl service;
+	private AlfrescoClient client;
+	private ConnectionRouter router;
+	private DownloadCoalescer coalescer;
+	private Session session;
+
+	@Before
+	public void setUp() throws IOException {
+		AlfrescoConnectionProperties properties = new AlfrescoConnectionProperties();
+		properties.setConnectionName("main");
+		properties.setMaxConcurrentRequests(1);
+		properties.setAcquireTimeoutMillis(50);
+		ConnectionProfile reports = new ConnectionProfile();
+		reports.setMaxConcurrentRequests(1);
+		reports.setAcquireTimeoutMillis(50);
+		properties.getProfiles().put("reports", reports);
+		ConnectionRoute route = new ConnectionRoute();
+		route.setTenant("acme");
+		route.setProfile("reports");
+		properties.getRoutes().add(route);
+		router = new ConnectionRouter();
+		ReflectionTestUtils.setField(router, "properties", properties);
+		router.init();
+
+		coalescer = new DownloadCoalescer();
+		ReflectionTestUtils.setField(coalescer, "spoolDir", temporaryFolder.getRoot().getPath());
+		ReflectionTestUtils.setField(coalescer, "maxSpoolBytes", CONTENT.length * 4L);
+		coalescer.init();
+
+		client = mock(AlfrescoClient.class);
+		session = session("repo");
+		when(client.getSession(any(ConnectionProfile.class))).thenReturn(session);
+
+		service = new AlfrescoServiceImpl();
+		service.alfrescoClient = client;
+		service.connectionRouter = router;
+		service.downloadCoalescer = coalescer;
+	}
+
+	@After
+	public void tearDown() {
+		coalescer.destroy();
+	}
+
+	@Test
+	public void coalescedDownloadHoldsASlotUntilTheRepositoryReadEnds() throws Exception {
+		document("a.txt", CONTENT.length);
+		CountDownLatch gate = new CountDownLatch(1);
+		when(client.getContent(session, "doc-1")).thenReturn(gated(gate));
+
+		DocumentContent content = service.getDocumentContent("/CI/T1", "a.txt", null, null);
+		// The pump waits at the gate and still holds the only slot
+		assertBusy(router.getDefaultProfile());
+
+		gate.countDown();
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(content.getStream()));
+		content.getStream().close();
+		awaitFree(router.getDefaultProfile());
+	}
+
+	@Test
+	public void bypassingDownloadHoldsASlotUntilItIsClosed() throws Exception {
+		// Unknown length is streamed straight from the repository
+		document("a.txt", -1);
+		when(client.getContent(session, "doc-1")).thenReturn(new ByteArrayInputStream(CONTENT));
+
+		DocumentContent content = service.getDocumentContent("/CI/T1", "a.txt", null, null);
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(content.getStream()));
+		assertBusy(router.getDefaultProfile());
+
+		content.getStream().close();
+		awaitFree(router.getDefaultProfile());
+	}
+
+	@Test
+	public void downloadsAreNotSharedAcrossProfiles() throws Exception {
+		document("a.txt", CONTENT.length);
+		CountDownLatch gate = new CountDownLatch(1);
+		when(client.getContent(eq(session), anyString())).thenReturn(gated(gate), gated(gate));
+
+		DocumentContent main = service.getDocumentContent("/CI/T1", "a.txt", null, null);
+		DocumentContent acme = service.getDocumentContent("/CI/T1", "a.txt", "acme", null);
+		gate.countDown();
+
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(main.getStream()));
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(acme.getStream()));
+		main.getStream().close();
+		acme.getStream().close();
+		verify(client, times(2)).getContent(session, "doc-1");
+	}
+
+	private void document(String name, long length) {
+		Document document = mock(Document.class);
+		when(document.getId()).thenReturn("doc-1");
+		when(document.getChangeToken()).thenReturn("1");
+		when(document.getContentStreamLength()).thenReturn(length);
+		when(document.getContentStreamMimeType()).thenReturn("text/plain");
+		AllowableActions allowableActions = mock(AllowableActions.class);
+		when(allowableActions.getAllowableActions()).thenReturn(EnumSet.of(Action.CAN_GET_CONTENT_STREAM));
+		when(document.getAllowableActions()).thenReturn(allowableActions);
+		when(client.getDocumentSummary(session, "/CI/T1", name)).thenReturn(document);
+	}
+
+	private void assertBusy(ConnectionProfile profile) {
+		try {
+			router.acquire(profile);
+			router.release(profile);
+			fail("The download should hold the slot of " + profile.getName());
+		} catch (CmisConnectionException e) {
+			// Expected
+		}
+	}
+
+	/*
+	 * The pump closes the repository stream right after the last chunk, on its own thread.
+	 */
+	private void awaitFree(ConnectionProfile profile) {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (true) {
+			try {
+				router.acquire(profile);
+				router.release(profile);
+				return;
+			} catch (CmisConnectionException e) {
+				assertTrue("The download should release the slot of " + profile.getName(),
+						System.currentTimeMillis() < deadline);
+			}
+		}
+	}
+
+	private static Session session(String repositoryId) {
+		Session session = mock(Session.class);
+		RepositoryInfo repositoryInfo = mock(RepositoryInfo.class);
+		when(repositoryInfo.getId()).thenReturn(repositoryId);
+		when(session.getRepositoryInfo()).thenReturn(repositoryInfo);
+		return session;
+	}
+
+	private static InputStream gated(CountDownLatch gate) {
+		return new ByteArrayInputStream(CONTENT) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.read(b, off, len);
+			}
+		};
+	}
+}